@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Trees;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import javax.swing.JTree;
+import javax.swing.SwingUtilities;
+
+/**
+ * Exposes the package-private phases of the viewer to the JMH benchmarks. JMH refuses benchmark
+ * classes in the default package, so the benchmarks live in {@code jast.bench} and reach the
+ * viewer through the functions returned here, which do only the work of the measured phase.
+ */
+public class JavacASTBench implements Closeable {
+
+  private final Path file;
+  private final JavacASTParser parser;
+
+  public JavacASTBench(Path file) {
+    this.file = file;
+    this.parser = new JavacASTParser(JavacASTParser.Mode.ANALYZE, null);
+  }
+
+  /** Parses the file in a new task. */
+  public Supplier<Object> parse() {
+    return () -> parse(parser.newTask(file));
+  }
+
+  /** Parses and attributes the file in a new task. */
+  public Supplier<Object> analyze() {
+    return () -> {
+      JavacTask task = parser.newTask(file);
+      parse(task);
+      analyze(task);
+      return task;
+    };
+  }
+
+  /** Visits an attributed tree into {@link JavacASTNode}s. */
+  public Supplier<Object> visit() {
+    JavacTask task = parser.newTask(file);
+    CompilationUnitTree ast = parse(task);
+    analyze(task);
+    Trees trees = Trees.instance(task);
+    return () -> JavacASTVisitor.visit(ast, trees);
+  }
+
+  /** Visits an attributed tree into a {@link JavacASTSnapshot}. */
+  public Supplier<Object> snapshot() {
+    JavacTask task = parser.newTask(file);
+    CompilationUnitTree ast = parse(task);
+    analyze(task);
+    Trees trees = Trees.instance(task);
+    return () -> JavacASTSnapshot.of(ast, trees, true);
+  }
+
+  /** Lexes the file into tokens. */
+  public Supplier<Object> tokens() throws IOException {
+    JavacASTSource source = JavacASTSource.read(file);
+    return () -> JavacASTTokens.of(source);
+  }
+
+  /**
+   * Builds the tree model and the {@link JTree} the viewer shows, expanded to {@code depth}, on
+   * the event dispatch thread like the viewer.
+   */
+  public Supplier<Object> treeModel(int depth) throws IOException {
+    JavacASTSnapshot snapshot = parser.snapshot(file);
+    return () -> onEventDispatchThread(() -> {
+      JavacASTTreeModel treeModel = new JavacASTTreeModel(snapshot);
+      JTree tree = new JTree(treeModel);
+      tree.setRowHeight(tree.getFontMetrics(tree.getFont()).getHeight() + 2);
+      tree.setLargeModel(true);
+      expand(tree, treeModel, 0, 0, depth);
+      return tree;
+    });
+  }
+
+  /**
+   * Highlights the range of the given node in the source pane of a viewer, scrolling to it. The
+   * viewer is created and called on the event dispatch thread, as Swing requires.
+   */
+  public IntConsumer updateSourcePane() throws IOException, InterruptedException {
+    JavacASTSnapshot snapshot = parser.snapshot(file);
+    JavacASTViewer viewer = onEventDispatchThread(
+        () -> new JavacASTViewer(new String[] {"--no-cache", file.toString()}));
+    viewer.awaitLoaded();
+    return node -> onEventDispatchThread(() -> {
+      viewer.updateSourcePane(snapshot.getStartPosition(node), snapshot.getEndPosition(node),
+          true);
+      return null;
+    });
+  }
+
+  /** Runs {@code action} on the event dispatch thread and waits for its result. */
+  private static <T> T onEventDispatchThread(Supplier<T> action) {
+    List<T> result = new ArrayList<>(1);
+    try {
+      SwingUtilities.invokeAndWait(() -> result.add(action.get()));
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException) cause
+          : new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    return result.get(0);
+  }
+
+  /** Returns the number of nodes in the file, the bound of the nodes to pass to the functions. */
+  public int size() throws IOException {
+    return parser.snapshot(file).size();
+  }
+
+  private static void expand(JTree tree, JavacASTTreeModel treeModel, int node, int depth,
+      int maxDepth) {
+    JavacASTSnapshot snapshot = treeModel.getSnapshot();
+    if (depth >= maxDepth || snapshot.getFirstChild(node) == JavacASTSnapshot.NONE) {
+      return;
+    }
+    tree.expandPath(treeModel.getTreePath(node));
+    for (int c = snapshot.getFirstChild(node); c != JavacASTSnapshot.NONE;
+        c = snapshot.getNextSibling(c)) {
+      expand(tree, treeModel, c, depth + 1, maxDepth);
+    }
+  }
+
+  private static CompilationUnitTree parse(JavacTask task) {
+    try {
+      return task.parse().iterator().next();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void analyze(JavacTask task) {
+    try {
+      task.analyze();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.close();
+  }
+}
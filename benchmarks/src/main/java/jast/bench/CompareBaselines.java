@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jast.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files ({@code -rf json}) benchmark by benchmark:
+ * {@code CompareBaselines <baseline.json> <current.json> [threshold%]}. Exits with 1 if a
+ * benchmark got slower than the threshold, 10% by default, beyond the errors of both runs.
+ */
+public class CompareBaselines {
+
+  public static void main(String[] args) throws IOException {
+    Map<String, Result> baseline = read(args[0]);
+    Map<String, Result> current = read(args[1]);
+    double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.1;
+    int regressions = 0;
+    for (Map.Entry<String, Result> entry : current.entrySet()) {
+      Result before = baseline.get(entry.getKey());
+      Result after = entry.getValue();
+      if (before == null) {
+        System.out.printf("%-70s %12.3f %s (new)%n", entry.getKey(), after.score, after.unit);
+        continue;
+      }
+      // Lower is better for times, higher for throughputs.
+      double change = after.score / before.score - 1;
+      double slowdown = after.higherIsBetter ? -change : change;
+      double margin = (before.error + after.error) / before.score;
+      boolean regression = slowdown > threshold + margin;
+      if (regression) {
+        regressions++;
+      }
+      System.out.printf("%-70s %12.3f -> %12.3f %s %+7.1f%%%s%n", entry.getKey(), before.score,
+          after.score, after.unit, 100 * change, regression ? "  REGRESSION" : "");
+    }
+    if (regressions > 0) {
+      System.out.println(regressions + " regression(s)");
+      System.exit(1);
+    }
+  }
+
+  private static final class Result {
+    final double score;
+    final double error;
+    final String unit;
+    final boolean higherIsBetter;
+
+    Result(double score, double error, String unit, boolean higherIsBetter) {
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+      this.higherIsBetter = higherIsBetter;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Result> read(String file) throws IOException {
+    String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+    Map<String, Result> results = new LinkedHashMap<>();
+    for (Object value : (List<Object>) new Parser(json).value()) {
+      Map<String, Object> run = (Map<String, Object>) value;
+      StringBuilder key = new StringBuilder((String) run.get("benchmark"));
+      Map<String, Object> params = (Map<String, Object>) run.get("params");
+      if (params != null) {
+        params.forEach((name, param) -> key.append(' ').append(name).append('=').append(param));
+      }
+      Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+      Object error = metric.get("scoreError");
+      String mode = (String) run.get("mode");
+      results.put(key.toString(), new Result(((Number) metric.get("score")).doubleValue(),
+          error instanceof Number ? ((Number) error).doubleValue() : 0,
+          (String) metric.get("scoreUnit"), mode.equals("thrpt")));
+    }
+    return results;
+  }
+
+  /** Just enough JSON for JMH result files. "NaN" errors are read as strings. */
+  private static final class Parser {
+    private final String json;
+    private int position;
+
+    Parser(String json) {
+      this.json = json;
+    }
+
+    Object value() {
+      skipWhitespace();
+      char c = json.charAt(position);
+      switch (c) {
+        case '{':
+          Map<String, Object> object = new LinkedHashMap<>();
+          position++;
+          while (!consume('}')) {
+            consume(',');
+            skipWhitespace();
+            String name = string();
+            skipWhitespace();
+            expect(':');
+            object.put(name, value());
+          }
+          return object;
+        case '[':
+          List<Object> array = new ArrayList<>();
+          position++;
+          while (!consume(']')) {
+            consume(',');
+            array.add(value());
+          }
+          return array;
+        case '"':
+          return string();
+        default:
+          int start = position;
+          while (position < json.length() && ",}] \t\r\n".indexOf(json.charAt(position)) < 0) {
+            position++;
+          }
+          String literal = json.substring(start, position);
+          if (literal.equals("true") || literal.equals("false")) {
+            return Boolean.valueOf(literal);
+          }
+          return literal.equals("null") ? null : Double.valueOf(literal);
+      }
+    }
+
+    private String string() {
+      expect('"');
+      StringBuilder sb = new StringBuilder();
+      char c;
+      while ((c = json.charAt(position++)) != '"') {
+        if (c == '\\') {
+          c = json.charAt(position++);
+          if (c == 'u') {
+            c = (char) Integer.parseInt(json.substring(position, position + 4), 16);
+            position += 4;
+          } else if (c == 'n') {
+            c = '\n';
+          } else if (c == 't') {
+            c = '\t';
+          }
+        }
+        sb.append(c);
+      }
+      return sb.toString();
+    }
+
+    private boolean consume(char c) {
+      skipWhitespace();
+      if (position < json.length() && json.charAt(position) == c) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char c) {
+      if (!consume(c)) {
+        throw new IllegalArgumentException("Expected '" + c + "' at " + position);
+      }
+    }
+
+    private void skipWhitespace() {
+      while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+        position++;
+      }
+    }
+  }
+}
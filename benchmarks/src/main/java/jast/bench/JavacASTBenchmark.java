@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jast.bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times each phase of loading a generated source into the viewer. The 1M line size is left out
+ * of the defaults because analyzing it takes minutes; add it with {@code -p lines=1000000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class JavacASTBenchmark {
+
+  private static final String CLASS_NAME = "Generated";
+
+  @Param({"1000", "10000", "100000"})
+  int lines;
+
+  @Param({"4"})
+  int depth;
+
+  @Param({"4"})
+  int density;
+
+  private Path directory;
+  private Closeable bench;
+  private Supplier<?> parse;
+  private Supplier<?> analyze;
+  private Supplier<?> visit;
+  private Supplier<?> snapshot;
+  private Supplier<?> treeModel;
+  private Supplier<?> tokens;
+  private IntConsumer updateSourcePane;
+  private int size;
+  private int node;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("jast-bench");
+    Path file = directory.resolve(CLASS_NAME + ".java");
+    Files.write(file, SourceGenerator.generate(CLASS_NAME, lines, depth, density, 0)
+        .getBytes(StandardCharsets.UTF_8));
+    Class<?> type = Class.forName("JavacASTBench");
+    bench = (Closeable) type.getConstructor(Path.class).newInstance(file);
+    parse = (Supplier<?>) type.getMethod("parse").invoke(bench);
+    analyze = (Supplier<?>) type.getMethod("analyze").invoke(bench);
+    visit = (Supplier<?>) type.getMethod("visit").invoke(bench);
+    snapshot = (Supplier<?>) type.getMethod("snapshot").invoke(bench);
+    treeModel = (Supplier<?>) type.getMethod("treeModel", int.class).invoke(bench, 2);
+    tokens = (Supplier<?>) type.getMethod("tokens").invoke(bench);
+    updateSourcePane = (IntConsumer) type.getMethod("updateSourcePane").invoke(bench);
+    size = (Integer) type.getMethod("size").invoke(bench);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    bench.close();
+    Files.deleteIfExists(directory.resolve(CLASS_NAME + ".java"));
+    Files.deleteIfExists(directory);
+  }
+
+  @Benchmark
+  public Object parse() {
+    return parse.get();
+  }
+
+  @Benchmark
+  public Object analyze() {
+    return analyze.get();
+  }
+
+  @Benchmark
+  public Object visit() {
+    return visit.get();
+  }
+
+  @Benchmark
+  public Object snapshot() {
+    return snapshot.get();
+  }
+
+  @Benchmark
+  public Object treeModel() {
+    return treeModel.get();
+  }
+
+  @Benchmark
+  public Object tokens() {
+    return tokens.get();
+  }
+
+  /**
+   * Selects the nodes in turn, so each call moves the highlight and scrolls. Each call waits for
+   * the event dispatch thread, which adds the handoff to the time.
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void updateSourcePane() {
+    updateSourcePane.accept(node);
+    node = (node + 7919) % size;
+  }
+}
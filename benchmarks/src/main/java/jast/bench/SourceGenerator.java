@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jast.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates compilable Java sources of a given size. The same arguments always produce the same
+ * source, so benchmark results for a size are comparable across runs.
+ *
+ * <p>{@code depth} is the maximum nesting of if, for and while blocks inside a method, and
+ * {@code density} the number of binary operators in each generated expression.
+ */
+public class SourceGenerator {
+
+  private static final int STATEMENTS_PER_METHOD = 40;
+  private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "&", "|", "^"};
+
+  private final Random random;
+  private final int depth;
+  private final int density;
+  private final StringBuilder sb = new StringBuilder();
+  private int lines;
+  private int methods;
+
+  private SourceGenerator(long seed, int depth, int density) {
+    this.random = new Random(seed);
+    this.depth = depth;
+    this.density = density;
+  }
+
+  static String generate(String className, int lines, int depth, int density, long seed) {
+    SourceGenerator generator = new SourceGenerator(seed, depth, density);
+    generator.line(0, "public class " + className + " {");
+    while (generator.lines < lines - 1) {
+      generator.method();
+    }
+    generator.line(0, "}");
+    return generator.sb.toString();
+  }
+
+  private void line(int indent, String text) {
+    for (int i = 0; i < indent; i++) {
+      sb.append("  ");
+    }
+    sb.append(text).append('\n');
+    lines++;
+  }
+
+  private void method() {
+    int id = methods++;
+    line(1, "int m" + id + "(int p0, int p1) {");
+    List<String> scope = new ArrayList<>();
+    scope.add("p0");
+    scope.add("p1");
+    line(2, "int v0 = " + expression(scope) + ";");
+    scope.add("v0");
+    int[] budget = {STATEMENTS_PER_METHOD};
+    block(2, 0, scope, budget);
+    line(2, "return v0;");
+    line(1, "}");
+    line(0, "");
+  }
+
+  private void block(int indent, int level, List<String> scope, int[] budget) {
+    int statements = 1 + random.nextInt(4);
+    for (int i = 0; i < statements && budget[0] > 0; i++) {
+      budget[0]--;
+      if (level < depth && random.nextInt(3) == 0) {
+        nested(indent, level, scope, budget);
+      } else if (methods > 1 && random.nextInt(4) == 0) {
+        String callee = "m" + random.nextInt(methods - 1);
+        line(indent, "v0 += " + callee + "(" + operand(scope) + ", " + expression(scope) + ");");
+      } else {
+        line(indent, "v0 = " + expression(scope) + ";");
+      }
+    }
+  }
+
+  private void nested(int indent, int level, List<String> scope, int[] budget) {
+    List<String> inner = new ArrayList<>(scope);
+    boolean loop = false;
+    switch (random.nextInt(3)) {
+      case 0:
+        line(indent, "if ((" + expression(scope) + ") > " + random.nextInt(100) + ") {");
+        break;
+      case 1:
+        String variable = "i" + level;
+        line(indent, "for (int " + variable + " = 0; " + variable + " < " + operand(scope) + "; "
+            + variable + "++) {");
+        inner.add(variable);
+        break;
+      default:
+        line(indent, "while (v0 < (" + expression(scope) + ")) {");
+        loop = true;
+    }
+    block(indent + 1, level + 1, inner, budget);
+    if (loop) {
+      line(indent + 1, "v0++;");
+    }
+    line(indent, "}");
+  }
+
+  private String expression(List<String> scope) {
+    StringBuilder expression = new StringBuilder(operand(scope));
+    for (int i = 0; i < density; i++) {
+      String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+      String operand = operand(scope);
+      if (random.nextInt(4) == 0) {
+        expression.insert(0, '(').append(')');
+      }
+      expression.append(' ').append(operator).append(' ').append(operand);
+    }
+    return expression.toString();
+  }
+
+  private String operand(List<String> scope) {
+    return random.nextInt(3) == 0
+        ? Integer.toString(1 + random.nextInt(1000))
+        : scope.get(random.nextInt(scope.size()));
+  }
+
+  /** Writes a source file: {@code SourceGenerator <file> <lines> [depth] [density] [seed]}. */
+  public static void main(String[] args) throws IOException {
+    Path file = Paths.get(args[0]);
+    String className = file.getFileName().toString().replace(".java", "");
+    int lines = Integer.parseInt(args[1]);
+    int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+    int density = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+    Files.write(file, generate(className, lines, depth, density, seed)
+        .getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Defers {@link JavacTask#analyze()} until the first node asks for its element or type.
+ *
+ * <p>The public task API can only attribute a whole task, so the first request attributes the
+ * compilation units of that task and later requests are plain lookups.
+ */
+class JavacASTAttributor {
+
+  private final JavacTask task;
+  private final Trees trees;
+  private boolean analyzed;
+
+  JavacASTAttributor(JavacTask task) {
+    this.task = task;
+    this.trees = Trees.instance(task);
+  }
+
+  Trees getTrees() {
+    return trees;
+  }
+
+  synchronized void analyze() {
+    if (analyzed) {
+      return;
+    }
+    try {
+      task.analyze();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    analyzed = true;
+  }
+
+  synchronized Element getElement(TreePath path) {
+    analyze();
+    return trees.getElement(path);
+  }
+
+  synchronized TypeMirror getTypeMirror(TreePath path) {
+    analyze();
+    return trees.getTypeMirror(path);
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+
+/**
+ * Headless entry point that visits every Java file under the given files and directories on a
+ * worker pool sized to the available cores, or in one shared compilation.
+ */
+public class JavacASTBatch implements Closeable {
+
+  private final JavacASTParser.Mode mode;
+  private final List<String> options;
+  private final JavacASTFilter filter;
+  private final JavacASTCache cache;
+  private final List<JavacASTParser> parsers = new ArrayList<>();
+  private final ThreadLocal<JavacASTParser> parser = ThreadLocal.withInitial(this::newParser);
+  private final LongAdder files = new LongAdder();
+  private final LongAdder nodes = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder sourceBytes = new LongAdder();
+  private final LongAdder[] phaseNanos = new LongAdder[JavacASTStats.Phase.values().length];
+  private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Creates a batch whose parsers are given javac {@code options} and {@code filter}. The cache is
+   * not used with options, since a source or class path makes the trees depend on files the key
+   * ignores.
+   */
+  JavacASTBatch(JavacASTParser.Mode mode, List<String> options, JavacASTFilter filter,
+      JavacASTCache cache) {
+    this.mode = mode;
+    this.options = options;
+    this.filter = filter;
+    this.cache = options.isEmpty() ? cache : null;
+    for (int i = 0; i < phaseNanos.length; i++) {
+      phaseNanos[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Returns the files named and the Java files under the directories named, each once however
+   * many times it is reached, since a shared compilation rejects a class declared twice.
+   */
+  static List<Path> collectSources(List<String> args) throws IOException {
+    List<Path> sources = new ArrayList<>();
+    Set<Path> seen = new HashSet<>();
+    for (String arg : args) {
+      Path path = Paths.get(arg);
+      List<Path> found;
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> walk = Files.walk(path)) {
+          found = walk.filter(JavacASTBatch::isJavaFile).collect(Collectors.toList());
+        }
+      } else {
+        found = Collections.singletonList(path);
+      }
+      for (Path source : found) {
+        if (seen.add(source.toAbsolutePath().normalize())) {
+          sources.add(source);
+        }
+      }
+    }
+    return sources;
+  }
+
+  private static boolean isJavaFile(Path path) {
+    return path.toString().endsWith(".java") && Files.isRegularFile(path);
+  }
+
+  private synchronized JavacASTParser newParser() {
+    JavacASTParser newParser = new JavacASTParser(mode, options, filter, diagnostic -> {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        errors.increment();
+      }
+    });
+    parsers.add(newParser);
+    return newParser;
+  }
+
+  /** Visits a file with the calling thread's parser, or reads it from the cache. */
+  JavacASTSnapshot load(Path source, JavacASTStats stats) throws IOException {
+    JavacASTSnapshot snapshot = cache == null
+        ? parser.get().snapshot(source, stats)
+        : cache.get(source, mode, filter, () -> parser.get().snapshot(source, stats));
+    stats.count(snapshot);
+    return snapshot;
+  }
+
+  /** Visits a file into {@code builder} with the calling thread's parser, bypassing the cache. */
+  <N> N visit(Path source, JavacASTStats stats, JavacASTBuilder<N> builder) throws IOException {
+    return parser.get().visit(source, stats, builder);
+  }
+
+  /**
+   * Visits all the files in one compilation on the calling thread, in the order of
+   * {@code sources}. The shared phases are timed in {@code stats}; the cache is not used, since
+   * each tree depends on the other files.
+   */
+  List<JavacASTSnapshot> loadShared(List<Path> sources, JavacASTStats stats) throws IOException {
+    return parser.get().snapshot(sources, stats);
+  }
+
+  /** Returns the deepest directory that contains all the sources. */
+  static Path commonDirectory(List<Path> sources) {
+    Path common = sources.get(0).toAbsolutePath().getParent();
+    for (Path source : sources) {
+      while (!source.toAbsolutePath().startsWith(common)) {
+        common = common.getParent();
+      }
+    }
+    return common;
+  }
+
+  private void process(Path source) {
+    try {
+      JavacASTStats stats = new JavacASTStats(source);
+      count(stats, load(source, stats));
+      addPhases(stats);
+    } catch (Throwable e) {
+      // Errors too, such as a StackOverflowError on a deeply nested file, so that the file is
+      // counted as failed rather than ending the task unreported.
+      failures.increment();
+      System.err.println(source + ": " + e);
+    }
+  }
+
+  private void processShared(List<Path> sources) {
+    try {
+      JavacASTStats shared = new JavacASTStats(commonDirectory(sources));
+      List<JavacASTSnapshot> snapshots = loadShared(sources, shared);
+      for (int i = 0; i < sources.size(); i++) {
+        JavacASTStats stats = new JavacASTStats(sources.get(i));
+        stats.count(snapshots.get(i));
+        count(stats, snapshots.get(i));
+      }
+      addPhases(shared);
+    } catch (Throwable e) {
+      failures.add(sources.size());
+      System.err.println(e);
+    }
+  }
+
+  private void count(JavacASTStats stats, JavacASTSnapshot snapshot) {
+    nodes.add(snapshot.size());
+    files.increment();
+    sourceBytes.add(stats.getSourceBytes());
+    maxDepth.accumulate(stats.getMaxDepth());
+  }
+
+  private void addPhases(JavacASTStats stats) {
+    for (JavacASTStats.Phase phase : JavacASTStats.Phase.values()) {
+      phaseNanos[phase.ordinal()].add(stats.getNanos(phase));
+    }
+  }
+
+  /**
+   * Visits the sources and prints the totals. With {@code shared} the sources are analyzed in one
+   * compilation on the calling thread instead of on {@code threads} workers.
+   */
+  void run(List<Path> sources, int threads, boolean shared)
+      throws InterruptedException, IOException {
+    long start = System.nanoTime();
+    if (shared) {
+      threads = 1;
+      processShared(sources);
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      for (Path source : sources) {
+        executor.execute(() -> process(source));
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    close();
+    System.out.printf("%d files, %d nodes, %d errors, %d failures in %.2fs on %d threads%n",
+        files.sum(), nodes.sum(), errors.sum(), failures.sum(), seconds, threads);
+    System.out.printf("%.1f files/s, %.1f nodes/s%n", files.sum() / seconds,
+        nodes.sum() / seconds);
+    StringBuilder phases = new StringBuilder();
+    for (JavacASTStats.Phase phase : JavacASTStats.Phase.values()) {
+      if (phase != JavacASTStats.Phase.MODEL) {
+        phases.append(String.format("%s %.2fs, ", phase.toString().toLowerCase(),
+            phaseNanos[phase.ordinal()].sum() / 1e9));
+      }
+    }
+    System.out.printf("%s%d source bytes, max depth %d%n", phases, sourceBytes.sum(),
+        maxDepth.get());
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (JavacASTParser p : parsers) {
+      p.close();
+    }
+    parsers.clear();
+  }
+
+  public static void main(String[] args) {
+    JavacASTParser.Mode mode = JavacASTParser.Mode.ANALYZE;
+    JavacASTCache cache = null;
+    List<String> options = new ArrayList<>();
+    JavacASTFilter.Builder filter = new JavacASTFilter.Builder();
+    boolean shared = false;
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--parse-only")) {
+        mode = JavacASTParser.Mode.PARSE_ONLY;
+      } else if (args[i].equals("--cache")) {
+        cache = new JavacASTCache(JavacASTCache.defaultDirectory());
+      } else if (args[i].equals("--shared")) {
+        shared = true;
+      } else if (JavacASTParser.PATH_OPTIONS.contains(args[i]) && i < args.length - 1) {
+        options.add(args[i]);
+        options.add(args[++i]);
+      } else if (JavacASTFilter.OPTIONS.contains(args[i])) {
+        i = filter.parse(args, i);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.isEmpty()) {
+      System.err.println("Usage: JavacASTBatch [--parse-only] [--cache] [--shared] "
+          + "[-sourcepath|-classpath|--module-path <path>]... [<filter options>] "
+          + "<file-or-directory>...");
+      System.exit(1);
+    }
+    try {
+      new JavacASTBatch(mode, options, filter.build(), cache).run(collectSources(paths),
+          Runtime.getRuntime().availableProcessors(), shared);
+    } catch (IOException | InterruptedException | IllegalArgumentException e) {
+      System.err.println(e);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.util.TreePath;
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Receives the nodes found by {@link JavacASTVisitor} in pre-order and returns the handle that
+ * is passed back as the parent of their children.
+ */
+@FunctionalInterface
+interface JavacASTBuilder<N> {
+
+  /**
+   * Adds a node. {@code parent} is null for the compilation unit, and {@code element} and
+   * {@code typeMirror} are null unless the visitor attributes.
+   */
+  N add(N parent, TreePath path, Element element, TypeMirror typeMirror, long startPosition,
+      long endPosition);
+
+  /** Called once the subtree of {@code node} has been visited, so nodes also end in post-order. */
+  default void end(N node) {
+  }
+}
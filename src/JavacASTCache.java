@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Directory of snapshots keyed by the SHA-256 of the source, the JDK version, the parser mode and
+ * the filter. Hits are read from a memory-mapped file without starting javac.
+ */
+public class JavacASTCache {
+
+  /** Computes the snapshot on a cache miss. */
+  interface Loader {
+    JavacASTSnapshot load() throws IOException;
+  }
+
+  private final Path directory;
+
+  JavacASTCache(Path directory) {
+    this.directory = directory;
+  }
+
+  static Path defaultDirectory() {
+    return Paths.get(System.getProperty("user.home"), ".cache", "jast");
+  }
+
+  /**
+   * Returns the cached snapshot of the file's current content, or loads and stores it. The loader
+   * reads the file again, so the snapshot is only stored if the file still has the content that
+   * was hashed; otherwise it could describe a newer version than its key.
+   */
+  JavacASTSnapshot get(Path file, JavacASTParser.Mode mode, JavacASTFilter filter, Loader loader)
+      throws IOException {
+    byte[] content = Files.readAllBytes(file);
+    Path entry = entry(content, mode, filter);
+    try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+      return JavacASTSnapshot.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (NoSuchFileException e) {
+      // Not cached yet.
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Ignoring unreadable cache entry " + entry + ": " + e);
+    }
+    JavacASTSnapshot snapshot = loader.load();
+    if (Arrays.equals(content, Files.readAllBytes(file))) {
+      put(entry, snapshot);
+    }
+    return snapshot;
+  }
+
+  /** Stores a snapshot of {@code file} computed elsewhere, such as by a build. */
+  void put(Path file, JavacASTParser.Mode mode, JavacASTFilter filter, JavacASTSnapshot snapshot)
+      throws IOException {
+    put(entry(Files.readAllBytes(file), mode, filter), snapshot);
+  }
+
+  private Path entry(byte[] content, JavacASTParser.Mode mode, JavacASTFilter filter) {
+    return directory.resolve(key(content, mode, filter) + ".jast");
+  }
+
+  private void put(Path entry, JavacASTSnapshot snapshot) throws IOException {
+    Files.createDirectories(directory);
+    Path temp = Files.createTempFile(directory, "entry", ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        snapshot.write(channel);
+      }
+      try {
+        Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static String key(byte[] content, JavacASTParser.Mode mode, JavacASTFilter filter) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(content);
+    String context = "\0" + System.getProperty("java.version") + "\0" + mode + "\0"
+        + JavacASTSnapshot.FORMAT_VERSION + "\0" + filter;
+    digest.update(context.getBytes(StandardCharsets.UTF_8));
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+}
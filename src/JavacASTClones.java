@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.Tree;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless entry point that reports duplicated code: subtrees of at least {@code --min-size}
+ * nodes whose {@link JavacASTHashes hash} occurs more than once in the given files and
+ * directories. With {@code --ignore-names} and {@code --ignore-literals}, subtrees that only
+ * differ in identifiers or literal values are copies too.
+ *
+ * <p>Files are hashed in parallel, and every subtree big enough is written as a fixed-size record
+ * to one of {@code --partitions} spill files chosen by its hash, so memory does not grow with the
+ * corpus. The partitions are then read back one at a time: a first pass counts their hashes in a
+ * primitive map and keeps those seen more than once, and a second pass groups their records. A
+ * copy whose parent is duplicated too is part of a larger clone, and a group is only reported if
+ * some copy is not.
+ */
+public class JavacASTClones {
+
+  private static final Tree.Kind[] KINDS = Tree.Kind.values();
+
+  /** Open-addressing map from long keys to non-negative int values, without boxing. */
+  static final class LongIntMap {
+    private long[] keys = new long[16];
+    /** Each value plus one, so that 0 marks an empty slot. */
+    private int[] values = new int[16];
+    private int size;
+
+    /** Returns the value of a key, or -1 if it has none. */
+    int get(long key) {
+      for (int i = slot(key); ; i = (i + 1) & (keys.length - 1)) {
+        if (values[i] == 0) {
+          return -1;
+        } else if (keys[i] == key) {
+          return values[i] - 1;
+        }
+      }
+    }
+
+    void put(long key, int value) {
+      if (size * 2 >= keys.length) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+          if (oldValues[i] != 0) {
+            int j = find(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+          }
+        }
+      }
+      int i = find(key);
+      if (values[i] == 0) {
+        size++;
+      }
+      keys[i] = key;
+      values[i] = value + 1;
+    }
+
+    int size() {
+      return size;
+    }
+
+    private int find(long key) {
+      int i = slot(key);
+      while (values[i] != 0 && keys[i] != key) {
+        i = (i + 1) & (keys.length - 1);
+      }
+      return i;
+    }
+
+    private int slot(long key) {
+      return (int) (key ^ (key >>> 32)) & (keys.length - 1);
+    }
+  }
+
+  /** One location of a duplicated subtree. */
+  private static final class Copy {
+    final int file;
+    final int start;
+    final int end;
+
+    Copy(int file, int start, int end) {
+      this.file = file;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /** The copies of one subtree. */
+  private static final class Group {
+    final Tree.Kind kind;
+    final int size;
+    final List<Copy> copies = new ArrayList<>();
+    boolean maximal;
+
+    Group(Tree.Kind kind, int size) {
+      this.kind = kind;
+      this.size = size;
+    }
+  }
+
+  private final List<Path> sources;
+  private final int minSize;
+  private final boolean names;
+  private final boolean literals;
+  private final Path directory;
+  private final Path[] partitions;
+  private final DataOutputStream[] spills;
+  private final LongAdder subtrees = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+
+  JavacASTClones(List<Path> sources, int minSize, boolean names, boolean literals,
+      int partitions) throws IOException {
+    this.sources = sources;
+    this.minSize = minSize;
+    this.names = names;
+    this.literals = literals;
+    this.directory = Files.createTempDirectory("jast-clones");
+    this.partitions = new Path[partitions];
+    this.spills = new DataOutputStream[partitions];
+    for (int i = 0; i < partitions; i++) {
+      this.partitions[i] = directory.resolve("partition-" + i);
+      spills[i] = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(this.partitions[i]), 1 << 16));
+    }
+  }
+
+  private int partition(long hash) {
+    return (int) ((hash >>> 32) % partitions.length);
+  }
+
+  /** Hashes a file and appends a record for each subtree big enough to its partition. */
+  private void hash(JavacASTBatch batch, int file) {
+    Path source = sources.get(file);
+    try {
+      JavacASTSnapshot snapshot = batch.load(source, new JavacASTStats(source));
+      JavacASTSource text = JavacASTSource.read(source);
+      int[] sizes = new int[snapshot.size()];
+      long[] hashes = JavacASTHashes.of(snapshot, text, names, literals, sizes);
+      ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[partitions.length];
+      DataOutputStream[] records = new DataOutputStream[partitions.length];
+      for (int node = 0; node < snapshot.size(); node++) {
+        if (sizes[node] < minSize) {
+          continue;
+        }
+        int p = partition(hashes[node]);
+        if (records[p] == null) {
+          buffers[p] = new ByteArrayOutputStream();
+          records[p] = new DataOutputStream(buffers[p]);
+        }
+        int parent = snapshot.getParent(node);
+        records[p].writeLong(hashes[node]);
+        records[p].writeLong(parent == JavacASTSnapshot.NONE ? 0 : hashes[parent]);
+        records[p].writeInt(file);
+        records[p].writeInt(snapshot.getKind(node).ordinal());
+        records[p].writeInt(snapshot.getStartPosition(node));
+        records[p].writeInt(snapshot.getEndPosition(node));
+        records[p].writeInt(sizes[node]);
+        subtrees.increment();
+      }
+      for (int p = 0; p < partitions.length; p++) {
+        if (buffers[p] != null) {
+          synchronized (spills[p]) {
+            buffers[p].writeTo(spills[p]);
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      failures.increment();
+      System.err.println(source + ": " + e);
+    }
+  }
+
+  /** Hashes the sources on {@code threads} workers and returns the clone groups, largest first. */
+  List<Group> run(JavacASTBatch batch, int threads) throws IOException, InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int i = 0; i < sources.size(); i++) {
+      int file = i;
+      executor.execute(() -> hash(batch, file));
+    }
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    for (DataOutputStream spill : spills) {
+      spill.close();
+    }
+    // Parents can be in any partition, so every duplicated hash is known before grouping.
+    LongIntMap duplicated = new LongIntMap();
+    for (Path partition : partitions) {
+      LongIntMap counts = new LongIntMap();
+      read(partition, (hash, parentHash, file, kind, start, end, size) -> {
+        int count = counts.get(hash);
+        counts.put(hash, count < 0 ? 1 : count + 1);
+        if (count == 1) {
+          duplicated.put(hash, 0);
+        }
+      });
+    }
+    List<Group> groups = new ArrayList<>();
+    for (Path partition : partitions) {
+      LongIntMap indices = new LongIntMap();
+      List<Group> partitionGroups = new ArrayList<>();
+      read(partition, (hash, parentHash, file, kind, start, end, size) -> {
+        if (duplicated.get(hash) < 0) {
+          return;
+        }
+        int index = indices.get(hash);
+        if (index < 0) {
+          index = partitionGroups.size();
+          indices.put(hash, index);
+          partitionGroups.add(new Group(KINDS[kind], size));
+        }
+        Group group = partitionGroups.get(index);
+        group.copies.add(new Copy(file, start, end));
+        group.maximal |= parentHash == 0 || duplicated.get(parentHash) < 0;
+      });
+      for (Group group : partitionGroups) {
+        if (group.maximal) {
+          groups.add(group);
+        }
+      }
+    }
+    groups.sort(Comparator.comparingInt((Group group) -> group.size)
+        .thenComparingInt(group -> group.copies.size()).reversed());
+    return groups;
+  }
+
+  /** Receives the fields of a record. */
+  private interface RecordConsumer {
+    void accept(long hash, long parentHash, int file, int kind, int start, int end, int size);
+  }
+
+  private static void read(Path partition, RecordConsumer consumer) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(partition), 1 << 16))) {
+      while (true) {
+        long hash;
+        try {
+          hash = in.readLong();
+        } catch (EOFException e) {
+          return;
+        }
+        consumer.accept(hash, in.readLong(), in.readInt(), in.readInt(), in.readInt(),
+            in.readInt(), in.readInt());
+      }
+    }
+  }
+
+  /**
+   * Prints each group with the {@code file:line:column} range of each copy. The files of a group
+   * are read for that group only, so that a run over many files holds few at a time.
+   */
+  void print(List<Group> groups) throws IOException {
+    for (Group group : groups) {
+      System.out.printf("%d copies of %s with %d nodes:%n", group.copies.size(), group.kind,
+          group.size);
+      Map<Integer, JavacASTSource> texts = new HashMap<>();
+      for (Copy copy : group.copies) {
+        JavacASTSource text = texts.get(copy.file);
+        if (text == null) {
+          text = JavacASTSource.read(sources.get(copy.file));
+          texts.put(copy.file, text);
+        }
+        System.out.printf("  %s:%s-%s%n", sources.get(copy.file),
+            position(text, copy.start), position(text, copy.end));
+      }
+    }
+  }
+
+  private static String position(JavacASTSource text, int position) {
+    int known = Math.max(position, 0);
+    int line = text.getLine(known);
+    return (line + 1) + ":" + (known - text.getLineStart(line) + 1);
+  }
+
+  /** Deletes the spill files. */
+  void delete() throws IOException {
+    for (Path partition : partitions) {
+      Files.deleteIfExists(partition);
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  public static void main(String[] args) {
+    int minSize = 30;
+    boolean names = true;
+    boolean literals = true;
+    int partitions = 64;
+    JavacASTCache cache = null;
+    JavacASTFilter.Builder filter = new JavacASTFilter.Builder();
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--min-size") && i < args.length - 1) {
+        minSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--partitions") && i < args.length - 1) {
+        partitions = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--ignore-names")) {
+        names = false;
+      } else if (args[i].equals("--ignore-literals")) {
+        literals = false;
+      } else if (args[i].equals("--cache")) {
+        cache = new JavacASTCache(JavacASTCache.defaultDirectory());
+      } else if (JavacASTFilter.OPTIONS.contains(args[i])) {
+        i = filter.parse(args, i);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.isEmpty()) {
+      System.err.println("Usage: JavacASTClones [--min-size <n>] [--ignore-names] "
+          + "[--ignore-literals] [--partitions <n>] [--cache] [<filter options>] "
+          + "<file-or-directory>...");
+      System.exit(1);
+    }
+    long start = System.nanoTime();
+    try (JavacASTBatch batch = new JavacASTBatch(JavacASTParser.Mode.PARSE_ONLY,
+        Collections.emptyList(), filter.build(), cache)) {
+      JavacASTClones clones = new JavacASTClones(JavacASTBatch.collectSources(paths), minSize,
+          names, literals, partitions);
+      try {
+        List<Group> groups = clones.run(batch, Runtime.getRuntime().availableProcessors());
+        clones.print(groups);
+        System.err.printf("%d files, %d failures, %d subtrees of %d+ nodes, %d clone groups "
+                + "in %.2fs%n", clones.sources.size(), clones.failures.sum(),
+            clones.subtrees.sum(), minSize, groups.size(), (System.nanoTime() - start) / 1e9);
+      } finally {
+        clones.delete();
+      }
+    } catch (IOException | InterruptedException | IllegalArgumentException e) {
+      System.err.println(e);
+      System.exit(1);
+    }
+  }
+}
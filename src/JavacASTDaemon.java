@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived entry point that keeps javac loaded and answers requests read from standard input,
+ * so a request pays for neither JVM startup nor a cold compiler.
+ *
+ * <p>Each request is one line: an id, the options of {@link JavacASTExport} and one file, with
+ * double quotes around arguments that contain spaces. Requests run concurrently on a bounded
+ * pool; when it is full, the reading thread runs the request itself, so a client that floods the
+ * daemon is slowed down instead of queued without bound. Each response is written as a whole,
+ * in completion order: a header line {@code {"request":...,"nodes":n,"millis":t}} followed by the
+ * {@code n} node lines of the export, or {@code {"request":...,"error":...}} alone.
+ *
+ * <pre>
+ * 1 --parse-only --include COMPILATION_UNIT,CLASS,METHOD src/JavacASTViewer.java
+ * 2 -sourcepath src "src/My File.java"
+ * </pre>
+ */
+public class JavacASTDaemon {
+
+  /** Combinations of mode, options and filter whose parsers are kept open. */
+  private static final int MAX_BATCHES = 16;
+
+  private final Writer out;
+  private final ThreadPoolExecutor executor;
+  /**
+   * Parsers by mode, options and filter, least recently used first; each keeps one parser per
+   * pool thread. Guarded by itself.
+   */
+  private final Map<String, Lease> batches = new LinkedHashMap<String, Lease>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Lease> eldest) {
+      if (size() <= MAX_BATCHES) {
+        return false;
+      }
+      eldest.getValue().evicted = true;
+      eldest.getValue().closeIfUnused();
+      return true;
+    }
+  };
+
+  /** A batch and the number of requests using it, so that it is closed once none is. */
+  private static final class Lease {
+    final JavacASTBatch batch;
+    int users;
+    boolean evicted;
+
+    Lease(JavacASTBatch batch) {
+      this.batch = batch;
+    }
+
+    void closeIfUnused() {
+      if (users == 0) {
+        try {
+          batch.close();
+        } catch (IOException e) {
+          System.err.println("Closing parsers: " + e);
+        }
+      }
+    }
+  }
+
+  JavacASTDaemon(Writer out, int threads) {
+    this.out = out;
+    this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.NANOSECONDS,
+        new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /** Splits a request into arguments at spaces outside double quotes. */
+  static List<String> split(String line) {
+    List<String> args = new ArrayList<>();
+    StringBuilder arg = null;
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"') {
+          quoted = false;
+        } else {
+          if (c == '\\' && i + 1 < line.length()) {
+            c = line.charAt(++i);
+          }
+          arg.append(c);
+        }
+      } else if (Character.isWhitespace(c)) {
+        if (arg != null) {
+          args.add(arg.toString());
+          arg = null;
+        }
+      } else {
+        if (arg == null) {
+          arg = new StringBuilder();
+        }
+        if (c == '"') {
+          quoted = true;
+        } else {
+          arg.append(c);
+        }
+      }
+    }
+    if (quoted) {
+      throw new IllegalArgumentException("Unterminated quote in " + line);
+    }
+    if (arg != null) {
+      args.add(arg.toString());
+    }
+    return args;
+  }
+
+  /** Reads requests until the end of {@code in}, then waits for the ones still running. */
+  void serve(BufferedReader in) throws IOException, InterruptedException {
+    String line;
+    while ((line = in.readLine()) != null) {
+      String request = line;
+      if (!request.trim().isEmpty()) {
+        executor.execute(() -> respond(request));
+      }
+    }
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    synchronized (batches) {
+      for (Lease lease : batches.values()) {
+        lease.closeIfUnused();
+      }
+      batches.clear();
+    }
+  }
+
+  private void respond(String line) {
+    long start = System.nanoTime();
+    String id = null;
+    StringWriter response = new StringWriter();
+    try {
+      List<String> args = split(line);
+      id = args.get(0);
+      StringWriter nodes = new StringWriter();
+      int size = visit(args.subList(1, args.size()), nodes);
+      response.write("{\"request\":");
+      JavacASTExport.NodeWriter.writeString(response, id);
+      response.write(",\"nodes\":" + size);
+      response.write(String.format(",\"millis\":%.3f}%n", (System.nanoTime() - start) / 1e6));
+      response.write(nodes.toString());
+    } catch (Throwable e) {
+      // Errors too, such as a StackOverflowError on a deeply nested file: the client waits for
+      // a response to every request.
+      response = new StringWriter();
+      try {
+        response.write("{\"request\":");
+        JavacASTExport.NodeWriter.writeString(response, id);
+        response.write(",\"error\":");
+        JavacASTExport.NodeWriter.writeString(response,
+            e instanceof UncheckedIOException ? e.getCause() : e);
+        response.write("}\n");
+      } catch (IOException impossible) {
+        throw new AssertionError(impossible);
+      }
+    }
+    synchronized (out) {
+      try {
+        out.write(response.toString());
+        out.flush();
+      } catch (IOException e) {
+        System.err.println(e);
+      }
+    }
+  }
+
+  /** Visits the file the arguments name into {@code nodes}, returning the number of nodes. */
+  private int visit(List<String> args, Writer nodes) throws IOException {
+    JavacASTParser.Mode mode = JavacASTParser.Mode.ANALYZE;
+    List<String> options = new ArrayList<>();
+    JavacASTFilter.Builder filterBuilder = new JavacASTFilter.Builder();
+    String file = null;
+    for (int i = 0; i < args.size(); i++) {
+      String arg = args.get(i);
+      if (arg.equals("--parse-only")) {
+        mode = JavacASTParser.Mode.PARSE_ONLY;
+      } else if (JavacASTParser.PATH_OPTIONS.contains(arg) && i < args.size() - 1) {
+        options.add(arg);
+        options.add(args.get(++i));
+      } else if (JavacASTFilter.OPTIONS.contains(arg)) {
+        i = filterBuilder.parse(args.toArray(new String[0]), i);
+      } else if (file == null && !arg.startsWith("-")) {
+        file = arg;
+      } else {
+        throw new IllegalArgumentException("Unexpected argument: " + arg);
+      }
+    }
+    if (file == null) {
+      throw new IllegalArgumentException("No file given");
+    }
+    Path source = Paths.get(file);
+    if (!Files.isRegularFile(source)) {
+      throw new IllegalArgumentException("No such file: " + file);
+    }
+    JavacASTFilter filter = filterBuilder.build();
+    Lease lease;
+    synchronized (batches) {
+      String key = mode + " " + options + " " + filter;
+      lease = batches.get(key);
+      if (lease == null) {
+        lease = new Lease(new JavacASTBatch(mode, options, filter, null));
+        batches.put(key, lease);
+      }
+      lease.users++;
+    }
+    try {
+      JavacASTExport.NodeWriter writer = new JavacASTExport.NodeWriter(nodes, file);
+      lease.batch.visit(source, new JavacASTStats(source), writer);
+      return writer.size();
+    } finally {
+      synchronized (batches) {
+        lease.users--;
+        if (lease.evicted) {
+          lease.closeIfUnused();
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    int threads = Runtime.getRuntime().availableProcessors();
+    if (args.length == 2 && args[0].equals("--threads")) {
+      threads = Integer.parseInt(args[1]);
+    } else if (args.length != 0) {
+      System.err.println("Usage: JavacASTDaemon [--threads <n>] < requests");
+      System.exit(1);
+    }
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+        1 << 16);
+    BufferedReader in =
+        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    try {
+      new JavacASTDaemon(out, threads).serve(in);
+    } catch (IOException e) {
+      System.err.println(e);
+      System.exit(1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
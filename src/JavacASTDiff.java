@@ -0,0 +1,547 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Matches the nodes of two versions of a file and classifies the differences as inserted,
+ * deleted, updated (same node, different {@link JavacASTHashes#getLabel label}) or moved
+ * (different parent, or reordered among its siblings) nodes.
+ *
+ * <p>Every subtree is given a {@link JavacASTHashes hash} of its kinds, names, leaf text and
+ * shape. Identical subtrees are matched first, as whole pre-order ranges: among the children of
+ * matched nodes, and anywhere in the file when one copy of the hash is left unmatched on each
+ * side. The remaining
+ * children of matched nodes are paired by kind and label, then by kind, in sibling order, and
+ * nodes left over are matched bottom-up to the old node that holds most of their matched
+ * children. Each step looks at every node a bounded number of times, so large files are diffed
+ * in linear time rather than by tree edit distance.
+ */
+public class JavacASTDiff {
+
+  /** Subtrees smaller than this are only matched among the children of matched nodes. */
+  private static final int MIN_UNIQUE_SIZE = 2;
+
+  private static final int INSERTED = 1;
+  private static final int UPDATED = 2;
+  private static final int MOVED = 4;
+  private static final int IDENTICAL = 8;
+  private static final int DELETED = 16;
+
+  /** One version of the file with its subtree hashes and the matches found so far. */
+  private static final class Side {
+    final JavacASTSnapshot snapshot;
+    final CharSequence source;
+    final long[] hashes;
+    final int[] sizes;
+    final int[] partners;
+    final byte[] flags;
+
+    Side(JavacASTSnapshot snapshot, CharSequence source) {
+      this.snapshot = snapshot;
+      this.source = source;
+      int size = snapshot.size();
+      sizes = new int[size];
+      hashes = JavacASTHashes.of(snapshot, source, true, true, sizes);
+      partners = new int[size];
+      flags = new byte[size];
+      Arrays.fill(partners, JavacASTSnapshot.NONE);
+    }
+
+    String getLabel(int node) {
+      return JavacASTHashes.getLabel(snapshot, source, node, true, true);
+    }
+
+    boolean isMatched(int node) {
+      return partners[node] != JavacASTSnapshot.NONE;
+    }
+  }
+
+  private final Side old;
+  private final Side next;
+  /**
+   * For each subtree hash: how many old and new nodes with it are unmatched, and the first old
+   * node with it.
+   */
+  private final Map<Long, int[]> hashCounts = new HashMap<>();
+  /** For each old node, the next old node with the same hash in {@link #hashCounts}. */
+  private final int[] sameHash;
+
+  private JavacASTDiff(Side old, Side next) {
+    this.old = old;
+    this.next = next;
+    sameHash = new int[old.snapshot.size()];
+  }
+
+  /** Diffs two versions of a file, given their snapshots and the sources they were built from. */
+  static JavacASTDiff of(JavacASTSnapshot oldSnapshot, CharSequence oldSource,
+      JavacASTSnapshot newSnapshot, CharSequence newSource) {
+    JavacASTDiff diff =
+        new JavacASTDiff(new Side(oldSnapshot, oldSource), new Side(newSnapshot, newSource));
+    diff.match();
+    diff.classify();
+    return diff;
+  }
+
+  private void match() {
+    for (int node = old.snapshot.size() - 1; node >= 0; node--) {
+      sameHash[node] = JavacASTSnapshot.NONE;
+      if (old.sizes[node] >= MIN_UNIQUE_SIZE) {
+        int[] counts = hashCounts.computeIfAbsent(old.hashes[node],
+            h -> new int[] {0, 0, JavacASTSnapshot.NONE});
+        counts[0]++;
+        sameHash[node] = counts[2];
+        counts[2] = node;
+      }
+    }
+    for (int node = 0; node < next.snapshot.size(); node++) {
+      int[] counts = hashCounts.get(next.hashes[node]);
+      if (counts != null) {
+        counts[1]++;
+      }
+    }
+    if (old.snapshot.size() > 0 && next.snapshot.size() > 0
+        && old.snapshot.getKind(0) == next.snapshot.getKind(0)) {
+      matchPair(0, 0);
+    } else if (next.snapshot.size() > 0) {
+      matchUnder(0);
+    }
+    // Descendants have higher ids, so they are matched before the nodes that contain them.
+    int[] votes = new int[old.snapshot.size()];
+    for (int node = next.snapshot.size() - 1; node >= 0; node--) {
+      if (!next.isMatched(node)) {
+        matchByChildren(node, votes);
+      }
+    }
+  }
+
+  private void link(int oldNode, int newNode) {
+    old.partners[oldNode] = newNode;
+    next.partners[newNode] = oldNode;
+    if (old.sizes[oldNode] >= MIN_UNIQUE_SIZE) {
+      hashCounts.get(old.hashes[oldNode])[0]--;
+    }
+    int[] counts = hashCounts.get(next.hashes[newNode]);
+    if (counts != null) {
+      counts[1]--;
+    }
+  }
+
+  /** Matches two nodes, and their subtrees as a whole if they are identical. */
+  private void matchPair(int oldNode, int newNode) {
+    if (old.hashes[oldNode] == next.hashes[newNode]
+        && old.sizes[oldNode] == next.sizes[newNode]) {
+      // Identical subtrees have the same shape, so their pre-order ranges line up.
+      // Below the root nothing can have been updated or moved.
+      link(oldNode, newNode);
+      for (int i = 1; i < next.sizes[newNode]; i++) {
+        link(oldNode + i, newNode + i);
+        next.flags[newNode + i] |= IDENTICAL;
+      }
+    } else {
+      link(oldNode, newNode);
+      matchChildren(oldNode, newNode);
+    }
+  }
+
+  /** Matches the children of two matched nodes, most certain matches first. */
+  private void matchChildren(int oldNode, int newNode) {
+    int[] oldChildren = old.snapshot.getChildren(oldNode);
+    int[] newChildren = next.snapshot.getChildren(newNode);
+    Map<Object, ArrayDeque<Integer>> candidates = new HashMap<>();
+    // Identical siblings.
+    for (int c : oldChildren) {
+      candidates.computeIfAbsent(old.hashes[c], k -> new ArrayDeque<>()).add(c);
+    }
+    for (int c : newChildren) {
+      // Under a node matched bottom-up, some children are matched already; relinking one would
+      // leave its old partner pointing at it. poll() likewise skips matched old nodes.
+      if (next.isMatched(c)) {
+        continue;
+      }
+      Integer candidate = poll(candidates.get(next.hashes[c]));
+      if (candidate != null && old.sizes[candidate] == next.sizes[c]) {
+        matchPair(candidate, c);
+      }
+    }
+    // Identical subtrees moved from elsewhere in the file.
+    for (int c : newChildren) {
+      if (!next.isMatched(c)) {
+        matchUnique(c);
+      }
+    }
+    List<Integer> pairs = new ArrayList<>();
+    // Same kind and label, then same kind, in sibling order.
+    for (int pass = 0; pass < 2; pass++) {
+      candidates.clear();
+      for (int c : oldChildren) {
+        if (!old.isMatched(c)) {
+          candidates.computeIfAbsent(key(old, c, pass == 0), k -> new ArrayDeque<>()).add(c);
+        }
+      }
+      for (int c : newChildren) {
+        if (!next.isMatched(c)) {
+          Integer candidate = poll(candidates.get(key(next, c, pass == 0)));
+          if (candidate != null) {
+            link(candidate, c);
+            pairs.add(c);
+          }
+        }
+      }
+    }
+    for (int c : pairs) {
+      matchChildren(next.partners[c], c);
+    }
+    for (int c : newChildren) {
+      if (!next.isMatched(c)) {
+        matchUnder(c);
+      }
+    }
+  }
+
+  private Integer poll(ArrayDeque<Integer> candidates) {
+    while (candidates != null && !candidates.isEmpty()) {
+      Integer candidate = candidates.poll();
+      if (!old.isMatched(candidate)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private static Object key(Side side, int node, boolean label) {
+    return label
+        ? Arrays.asList(side.snapshot.getKind(node), side.getLabel(node))
+        : side.snapshot.getKind(node);
+  }
+
+  /** Matches a subtree to its old copy if they are the only unmatched nodes with their hash. */
+  private boolean matchUnique(int newNode) {
+    int[] counts = hashCounts.get(next.hashes[newNode]);
+    if (counts == null || counts[0] != 1 || counts[1] != 1) {
+      return false;
+    }
+    int oldNode = counts[2];
+    while (old.isMatched(oldNode)) {
+      oldNode = sameHash[oldNode];
+    }
+    if (old.sizes[oldNode] != next.sizes[newNode]) {
+      return false;
+    }
+    matchPair(oldNode, newNode);
+    return true;
+  }
+
+  /** Looks for unique identical subtrees under an unmatched node. */
+  private void matchUnder(int newNode) {
+    for (int c = next.snapshot.getFirstChild(newNode); c != JavacASTSnapshot.NONE;
+        c = next.snapshot.getNextSibling(c)) {
+      if (!next.isMatched(c) && !matchUnique(c)) {
+        matchUnder(c);
+      }
+    }
+  }
+
+  /**
+   * Matches an unmatched node to the unmatched old node of the same kind that is the parent of
+   * most of the old partners of its children, if that is at least half of them.
+   */
+  private void matchByChildren(int newNode, int[] votes) {
+    int matchedChildren = 0;
+    int best = JavacASTSnapshot.NONE;
+    for (int c = next.snapshot.getFirstChild(newNode); c != JavacASTSnapshot.NONE;
+        c = next.snapshot.getNextSibling(c)) {
+      if (next.isMatched(c)) {
+        matchedChildren++;
+        int parent = old.snapshot.getParent(next.partners[c]);
+        if (parent != JavacASTSnapshot.NONE && !old.isMatched(parent)
+            && old.snapshot.getKind(parent) == next.snapshot.getKind(newNode)
+            && (++votes[parent] > (best == JavacASTSnapshot.NONE ? 0 : votes[best]))) {
+          best = parent;
+        }
+      }
+    }
+    int bestVotes = best == JavacASTSnapshot.NONE ? 0 : votes[best];
+    for (int c = next.snapshot.getFirstChild(newNode); c != JavacASTSnapshot.NONE;
+        c = next.snapshot.getNextSibling(c)) {
+      if (next.isMatched(c)) {
+        int parent = old.snapshot.getParent(next.partners[c]);
+        if (parent != JavacASTSnapshot.NONE) {
+          votes[parent] = 0;
+        }
+      }
+    }
+    if (best != JavacASTSnapshot.NONE && bestVotes * 2 >= matchedChildren) {
+      link(best, newNode);
+      matchChildren(best, newNode);
+    }
+  }
+
+  private void classify() {
+    for (int node = 0; node < old.snapshot.size(); node++) {
+      if (!old.isMatched(node)) {
+        old.flags[node] |= DELETED;
+      }
+    }
+    int[] siblingIndices = new int[old.snapshot.size()];
+    for (int node = 0; node < old.snapshot.size(); node++) {
+      int i = 0;
+      for (int c = old.snapshot.getFirstChild(node); c != JavacASTSnapshot.NONE;
+          c = old.snapshot.getNextSibling(c)) {
+        siblingIndices[c] = i++;
+      }
+    }
+    for (int node = 0; node < next.snapshot.size(); node++) {
+      if (!next.isMatched(node)) {
+        next.flags[node] |= INSERTED;
+        continue;
+      }
+      if ((next.flags[node] & IDENTICAL) == 0) {
+        int oldNode = next.partners[node];
+        if (!Objects.equals(old.getLabel(oldNode), next.getLabel(node))) {
+          next.flags[node] |= UPDATED;
+        }
+        int parent = next.snapshot.getParent(node);
+        int oldParent = old.snapshot.getParent(oldNode);
+        if (parent == JavacASTSnapshot.NONE
+            ? oldParent != JavacASTSnapshot.NONE : next.partners[parent] != oldParent) {
+          next.flags[node] |= MOVED;
+        }
+        markReordered(node, siblingIndices);
+      }
+    }
+  }
+
+  /**
+   * Marks the children of a matched node that stayed under its partner but changed places: those
+   * outside the longest run that kept its order.
+   */
+  private void markReordered(int node, int[] siblingIndices) {
+    int oldNode = next.partners[node];
+    List<Integer> kept = new ArrayList<>();
+    for (int c = next.snapshot.getFirstChild(node); c != JavacASTSnapshot.NONE;
+        c = next.snapshot.getNextSibling(c)) {
+      if (next.isMatched(c) && old.snapshot.getParent(next.partners[c]) == oldNode) {
+        kept.add(c);
+      }
+    }
+    if (kept.size() < 2) {
+      return;
+    }
+    // Longest increasing subsequence of the old sibling indices, by patience sorting.
+    int[] tails = new int[kept.size()];
+    int[] previous = new int[kept.size()];
+    int length = 0;
+    for (int i = 0; i < kept.size(); i++) {
+      int index = siblingIndices[next.partners[kept.get(i)]];
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (siblingIndices[next.partners[kept.get(tails[mid])]] < index) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      length = Math.max(length, low + 1);
+    }
+    boolean[] inOrder = new boolean[kept.size()];
+    for (int i = length == 0 ? -1 : tails[length - 1]; i >= 0; i = previous[i]) {
+      inOrder[i] = true;
+    }
+    for (int i = 0; i < kept.size(); i++) {
+      if (!inOrder[i]) {
+        next.flags[kept.get(i)] |= MOVED;
+      }
+    }
+  }
+
+  JavacASTSnapshot getOldSnapshot() {
+    return old.snapshot;
+  }
+
+  JavacASTSnapshot getNewSnapshot() {
+    return next.snapshot;
+  }
+
+  /** Returns the old node matched to a new one, or {@link JavacASTSnapshot#NONE}. */
+  int getOldNode(int newNode) {
+    return next.partners[newNode];
+  }
+
+  boolean isInserted(int newNode) {
+    return (next.flags[newNode] & INSERTED) != 0;
+  }
+
+  boolean isUpdated(int newNode) {
+    return (next.flags[newNode] & UPDATED) != 0;
+  }
+
+  boolean isMoved(int newNode) {
+    return (next.flags[newNode] & MOVED) != 0;
+  }
+
+  boolean isDeleted(int oldNode) {
+    return (old.flags[oldNode] & DELETED) != 0;
+  }
+
+  /** Returns the old nodes that were deleted with everything under them, in pre-order. */
+  List<Integer> getDeletedRoots() {
+    return getRoots(old, DELETED);
+  }
+
+  /** Returns the new nodes that were inserted with everything under them, in pre-order. */
+  List<Integer> getInsertedRoots() {
+    return getRoots(next, INSERTED);
+  }
+
+  private static List<Integer> getRoots(Side side, int flag) {
+    List<Integer> roots = new ArrayList<>();
+    for (int node = 0; node < side.snapshot.size(); node++) {
+      int parent = side.snapshot.getParent(node);
+      if ((side.flags[node] & flag) != 0
+          && (parent == JavacASTSnapshot.NONE || (side.flags[parent] & flag) == 0)) {
+        roots.add(node);
+      }
+    }
+    return roots;
+  }
+
+  /** Returns how many nodes have each flag, as inserted, deleted, updated and moved. */
+  private int[] count() {
+    int[] counts = new int[4];
+    for (int node = 0; node < next.snapshot.size(); node++) {
+      counts[0] += isInserted(node) ? 1 : 0;
+      counts[2] += isUpdated(node) ? 1 : 0;
+      counts[3] += isMoved(node) ? 1 : 0;
+    }
+    for (int node = 0; node < old.snapshot.size(); node++) {
+      counts[1] += isDeleted(node) ? 1 : 0;
+    }
+    return counts;
+  }
+
+  @Override
+  public String toString() {
+    int[] counts = count();
+    return String.format("%d inserted, %d deleted, %d updated, %d moved", counts[0], counts[1],
+        counts[2], counts[3]);
+  }
+
+  /**
+   * Writes the differences as newline-delimited JSON: one object per inserted or deleted subtree,
+   * and one per updated or moved node, with its old and new ids, positions and labels.
+   */
+  void write(Writer out) throws IOException {
+    for (int node : getInsertedRoots()) {
+      writeAction(out, "insert", JavacASTSnapshot.NONE, node);
+    }
+    for (int node : getDeletedRoots()) {
+      writeAction(out, "delete", node, JavacASTSnapshot.NONE);
+    }
+    for (int node = 0; node < next.snapshot.size(); node++) {
+      if (isUpdated(node)) {
+        writeAction(out, "update", next.partners[node], node);
+      }
+      if (isMoved(node)) {
+        writeAction(out, "move", next.partners[node], node);
+      }
+    }
+  }
+
+  private void writeAction(Writer out, String action, int oldNode, int newNode)
+      throws IOException {
+    out.write("{\"action\":\"");
+    out.write(action);
+    out.write("\",\"kind\":\"");
+    out.write((newNode == JavacASTSnapshot.NONE
+        ? old.snapshot.getKind(oldNode) : next.snapshot.getKind(newNode)).toString());
+    out.write('"');
+    writeNode(out, "old", old, oldNode);
+    writeNode(out, "new", next, newNode);
+    out.write("}\n");
+  }
+
+  private static void writeNode(Writer out, String name, Side side, int node)
+      throws IOException {
+    if (node == JavacASTSnapshot.NONE) {
+      return;
+    }
+    out.write(",\"" + name + "\":{\"id\":" + node);
+    out.write(",\"start\":" + side.snapshot.getStartPosition(node));
+    out.write(",\"end\":" + side.snapshot.getEndPosition(node));
+    out.write(",\"size\":" + side.sizes[node]);
+    out.write(",\"label\":");
+    JavacASTExport.NodeWriter.writeString(out, side.getLabel(node));
+    out.write('}');
+  }
+
+  public static void main(String[] args) {
+    JavacASTFilter.Builder filter = new JavacASTFilter.Builder();
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (JavacASTFilter.OPTIONS.contains(args[i])) {
+        i = filter.parse(args, i);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.size() != 2) {
+      System.err.println("Usage: JavacASTDiff [<filter options>] <old-file> <new-file>");
+      System.exit(1);
+    }
+    try (JavacASTParser parser = new JavacASTParser(JavacASTParser.Mode.PARSE_ONLY,
+        Collections.emptyList(), filter.build(), null)) {
+      Path oldFile = Paths.get(paths.get(0));
+      Path newFile = Paths.get(paths.get(1));
+      JavacASTSnapshot oldSnapshot = parser.snapshot(oldFile);
+      JavacASTSnapshot newSnapshot = parser.snapshot(newFile);
+      long start = System.nanoTime();
+      JavacASTDiff diff = of(oldSnapshot, JavacASTSource.read(oldFile), newSnapshot,
+          JavacASTSource.read(newFile));
+      double millis = (System.nanoTime() - start) / 1e6;
+      Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+          1 << 16);
+      diff.write(out);
+      out.flush();
+      System.err.printf("%s (%d and %d nodes in %.1f ms)%n", diff, oldSnapshot.size(),
+          newSnapshot.size(), millis);
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println(e);
+      System.exit(1);
+    }
+  }
+}
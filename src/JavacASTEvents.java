@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.Tree;
+import java.nio.file.Path;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events for {@link JavacASTStats}. Only this class refers to {@code jdk.jfr},
+ * so the others still load on a JDK without it.
+ */
+class JavacASTEvents {
+
+  private JavacASTEvents() {}
+
+  @Name("jast.Phase")
+  @Label("JAST Phase")
+  @Category("JAST")
+  static class PhaseEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Phase")
+    String phase;
+  }
+
+  @Name("jast.File")
+  @Label("JAST File")
+  @Category("JAST")
+  static class FileEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Source Size")
+    @DataAmount
+    long sourceBytes;
+
+    @Label("Nodes")
+    int nodes;
+
+    @Label("Max Depth")
+    int maxDepth;
+
+    @Label("Read")
+    @Timespan
+    long read;
+
+    @Label("Parse")
+    @Timespan
+    long parse;
+
+    @Label("Analyze")
+    @Timespan
+    long analyze;
+
+    @Label("Visit")
+    @Timespan
+    long visit;
+  }
+
+  @Name("jast.NodeKind")
+  @Label("JAST Node Kind")
+  @Category("JAST")
+  static class NodeKindEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Kind")
+    String kind;
+
+    @Label("Count")
+    int count;
+  }
+
+  static Object beginPhase(Path file, JavacASTStats.Phase phase) {
+    PhaseEvent event = new PhaseEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.file = file.toString();
+    event.phase = phase.toString();
+    event.begin();
+    return event;
+  }
+
+  static void commitPhase(Object event) {
+    ((PhaseEvent) event).commit();
+  }
+
+  static void commitFile(JavacASTStats stats) {
+    FileEvent event = new FileEvent();
+    if (event.shouldCommit()) {
+      event.file = stats.getFile().toString();
+      event.sourceBytes = stats.getSourceBytes();
+      event.nodes = stats.getNodes();
+      event.maxDepth = stats.getMaxDepth();
+      event.read = stats.getNanos(JavacASTStats.Phase.READ);
+      event.parse = stats.getNanos(JavacASTStats.Phase.PARSE);
+      event.analyze = stats.getNanos(JavacASTStats.Phase.ANALYZE);
+      event.visit = stats.getNanos(JavacASTStats.Phase.VISIT);
+      event.commit();
+    }
+    if (!new NodeKindEvent().isEnabled()) {
+      return;
+    }
+    for (Tree.Kind kind : Tree.Kind.values()) {
+      if (stats.getCount(kind) > 0) {
+        NodeKindEvent kindEvent = new NodeKindEvent();
+        kindEvent.file = stats.getFile().toString();
+        kindEvent.kind = kind.toString();
+        kindEvent.count = stats.getCount(kind);
+        kindEvent.commit();
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Headless entry point that writes the nodes of every Java file under the given files and
+ * directories to standard output as newline-delimited JSON, one object per node, in pre-order.
+ *
+ * <p>Nodes are written while javac's tree is scanned, so beside javac's own tree the export only
+ * holds the scanner's path to the current node. Ids restart at 0 in each file, and the root of
+ * each file also carries its path.
+ */
+public class JavacASTExport {
+
+  /** Writes each node it is given as one line of JSON. */
+  static class NodeWriter implements JavacASTBuilder<Integer> {
+
+    private final Writer out;
+    private final String file;
+    private int size;
+
+    NodeWriter(Writer out, String file) {
+      this.out = out;
+      this.file = file;
+    }
+
+    @Override
+    public Integer add(Integer parent, TreePath path, Element element, TypeMirror typeMirror,
+        long startPosition, long endPosition) {
+      Tree tree = path.getLeaf();
+      return add(parent == null ? JavacASTSnapshot.NONE : parent, tree.getKind(),
+          element != null ? element.getSimpleName() : JavacASTNode.getName(tree), element,
+          typeMirror, startPosition, endPosition);
+    }
+
+    int add(int parent, Tree.Kind kind, CharSequence name, Object element, Object typeMirror,
+        long startPosition, long endPosition) {
+      int node = size++;
+      try {
+        out.write("{\"id\":");
+        out.write(Integer.toString(node));
+        out.write(",\"parent\":");
+        out.write(Integer.toString(parent));
+        if (parent == JavacASTSnapshot.NONE) {
+          out.write(",\"file\":");
+          writeString(file);
+        }
+        out.write(",\"kind\":\"");
+        out.write(kind.toString());
+        out.write("\",\"start\":");
+        out.write(Long.toString(startPosition));
+        out.write(",\"end\":");
+        out.write(Long.toString(endPosition));
+        out.write(",\"name\":");
+        writeString(name);
+        out.write(",\"element\":");
+        writeString(element);
+        out.write(",\"type\":");
+        writeString(typeMirror);
+        out.write("}\n");
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return node;
+    }
+
+    int size() {
+      return size;
+    }
+
+    private void writeString(Object value) throws IOException {
+      writeString(out, value);
+    }
+
+    /** Writes the string form of {@code value} as a JSON string, or {@code null}. */
+    static void writeString(Writer out, Object value) throws IOException {
+      if (value == null) {
+        out.write("null");
+        return;
+      }
+      String string = value.toString();
+      out.write('"');
+      for (int i = 0; i < string.length(); i++) {
+        char c = string.charAt(i);
+        if (c == '"' || c == '\\') {
+          out.write('\\');
+          out.write(c);
+        } else if (c < 0x20) {
+          out.write(String.format("\\u%04x", (int) c));
+        } else {
+          out.write(c);
+        }
+      }
+      out.write('"');
+    }
+  }
+
+  public static void main(String[] args) {
+    JavacASTParser.Mode mode = JavacASTParser.Mode.ANALYZE;
+    List<String> options = new ArrayList<>();
+    JavacASTFilter.Builder filter = new JavacASTFilter.Builder();
+    boolean shared = false;
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--parse-only")) {
+        mode = JavacASTParser.Mode.PARSE_ONLY;
+      } else if (args[i].equals("--shared")) {
+        shared = true;
+      } else if (JavacASTParser.PATH_OPTIONS.contains(args[i]) && i < args.length - 1) {
+        options.add(args[i]);
+        options.add(args[++i]);
+      } else if (JavacASTFilter.OPTIONS.contains(args[i])) {
+        i = filter.parse(args, i);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.isEmpty()) {
+      System.err.println("Usage: JavacASTExport [--parse-only] [--shared] "
+          + "[-sourcepath|-classpath|--module-path <path>]... [<filter options>] "
+          + "<file-or-directory>...");
+      System.exit(1);
+    }
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+        1 << 16);
+    try (JavacASTParser parser = new JavacASTParser(mode, options, filter.build(), null)) {
+      List<Path> sources = JavacASTBatch.collectSources(paths);
+      try {
+        if (shared && !sources.isEmpty()) {
+          parser.visit(sources, new JavacASTStats(JavacASTBatch.commonDirectory(sources)),
+              source -> new NodeWriter(out, source.toString()));
+        } else {
+          for (Path source : sources) {
+            parser.visit(source, new JavacASTStats(source), new NodeWriter(out, source.toString()));
+          }
+        }
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      out.flush();
+    } catch (IOException e) {
+      System.err.println(e);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.Tree;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which subtrees {@link JavacASTVisitor} visits. A rejected node is pruned with its whole
+ * subtree before it is scanned or attributed, and the nodes kept under it are not reached. The
+ * root is always kept.
+ *
+ * <p>An outline of a large file, for instance, keeps only declarations and skips method bodies:
+ * {@code --include COMPILATION_UNIT,CLASS,METHOD,VARIABLE --skip-method-bodies}.
+ */
+public class JavacASTFilter {
+
+  /** Keeps every node. */
+  static final JavacASTFilter ALL = new JavacASTFilter(null, EnumSet.noneOf(Tree.Kind.class),
+      Integer.MAX_VALUE, false);
+
+  /** Command line options read by {@link Builder#parse(String[], int)}. */
+  static final List<String> OPTIONS = Collections.unmodifiableList(
+      Arrays.asList("--include", "--exclude", "--max-depth", "--skip-method-bodies"));
+
+  private final Set<Tree.Kind> included;
+  private final Set<Tree.Kind> excluded;
+  private final int maxDepth;
+  private final boolean skipMethodBodies;
+
+  private JavacASTFilter(Set<Tree.Kind> included, Set<Tree.Kind> excluded, int maxDepth,
+      boolean skipMethodBodies) {
+    this.included = included;
+    this.excluded = excluded;
+    this.maxDepth = maxDepth;
+    this.skipMethodBodies = skipMethodBodies;
+  }
+
+  /**
+   * Returns whether {@code tree}, at {@code depth} below the root, and its subtree are visited.
+   * {@code parent} is the enclosing tree, or null for the root.
+   */
+  boolean accepts(Tree tree, Tree parent, int depth) {
+    if (parent == null) {
+      return true;
+    }
+    Tree.Kind kind = tree.getKind();
+    return depth <= maxDepth
+        && (included == null || included.contains(kind))
+        && !excluded.contains(kind)
+        && !(skipMethodBodies && kind == Tree.Kind.BLOCK && parent.getKind() == Tree.Kind.METHOD);
+  }
+
+  /** Returns a canonical description, empty for {@link #ALL}, that is part of the cache key. */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    if (included != null) {
+      sb.append("include=").append(included).append(';');
+    }
+    if (!excluded.isEmpty()) {
+      sb.append("exclude=").append(excluded).append(';');
+    }
+    if (maxDepth != Integer.MAX_VALUE) {
+      sb.append("max-depth=").append(maxDepth).append(';');
+    }
+    if (skipMethodBodies) {
+      sb.append("skip-method-bodies;");
+    }
+    return sb.toString();
+  }
+
+  /** Collects a filter from command line options. */
+  static class Builder {
+
+    private Set<Tree.Kind> included;
+    private final Set<Tree.Kind> excluded = EnumSet.noneOf(Tree.Kind.class);
+    private int maxDepth = Integer.MAX_VALUE;
+    private boolean skipMethodBodies;
+
+    /**
+     * Reads the option in {@link #OPTIONS} at {@code args[i]} and returns the index of its last
+     * argument.
+     */
+    int parse(String[] args, int i) {
+      if (args[i].equals("--skip-method-bodies")) {
+        skipMethodBodies = true;
+        return i;
+      }
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + args[i]);
+      }
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--include":
+          if (included == null) {
+            included = EnumSet.noneOf(Tree.Kind.class);
+          }
+          included.addAll(parseKinds(value));
+          break;
+        case "--exclude":
+          excluded.addAll(parseKinds(value));
+          break;
+        case "--max-depth":
+          maxDepth = Integer.parseInt(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+      return i + 1;
+    }
+
+    private static Set<Tree.Kind> parseKinds(String value) {
+      Set<Tree.Kind> kinds = EnumSet.noneOf(Tree.Kind.class);
+      for (String kind : value.split(",")) {
+        kinds.add(Tree.Kind.valueOf(kind.trim()));
+      }
+      return kinds;
+    }
+
+    JavacASTFilter build() {
+      if (included == null && excluded.isEmpty() && maxDepth == Integer.MAX_VALUE
+          && !skipMethodBodies) {
+        return ALL;
+      }
+      return new JavacASTFilter(included == null ? null : EnumSet.copyOf(included),
+          EnumSet.copyOf(excluded), maxDepth, skipMethodBodies);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.ModifiersTree;
+import com.sun.source.tree.PrimitiveTypeTree;
+import java.util.Objects;
+
+/**
+ * Structural hashes of the subtrees of a snapshot, over the kinds and labels of their nodes and
+ * their shape, computed bottom-up in one backwards pass over the pre-order ids.
+ *
+ * <p>A node is labeled by its name, or by its source text if it is a literal, primitive type or
+ * modifier leaf. Names and literals can be left out of the labels, so that subtrees that only
+ * differ in them hash the same.
+ */
+public class JavacASTHashes {
+
+  private JavacASTHashes() {}
+
+  /** Returns the label of a node, or null if it has none or it is left out. */
+  static String getLabel(JavacASTSnapshot snapshot, CharSequence source, int node,
+      boolean names, boolean literals) {
+    String name = snapshot.getName(node);
+    if (name != null) {
+      return names ? name : null;
+    }
+    Class<?> type = snapshot.getKind(node).asInterface();
+    if (snapshot.getFirstChild(node) != JavacASTSnapshot.NONE
+        || !((type == LiteralTree.class && literals) || type == PrimitiveTypeTree.class
+            || type == ModifiersTree.class)) {
+      return null;
+    }
+    int start = snapshot.getStartPosition(node);
+    int end = snapshot.getEndPosition(node);
+    return start < 0 || end < start || end > source.length()
+        ? null : source.subSequence(start, end).toString();
+  }
+
+  /** Returns the hash of every subtree, and stores the number of nodes of each in sizes. */
+  static long[] of(JavacASTSnapshot snapshot, CharSequence source, boolean names,
+      boolean literals, int[] sizes) {
+    long[] hashes = new long[snapshot.size()];
+    // Children come after their parents, so a backwards pass sees every subtree complete.
+    for (int node = snapshot.size() - 1; node >= 0; node--) {
+      long hash = snapshot.getKind(node).ordinal() * 0x9E3779B97F4A7C15L
+          + Objects.hashCode(getLabel(snapshot, source, node, names, literals));
+      int nodes = 1;
+      for (int c = snapshot.getFirstChild(node); c != JavacASTSnapshot.NONE;
+          c = snapshot.getNextSibling(c)) {
+        hash = hash * 31 + hashes[c];
+        nodes += sizes[c];
+      }
+      hashes[node] = mix(hash);
+      sizes[node] = nodes;
+    }
+    return hashes;
+  }
+
+  /** Spreads the bits of a hash, as the finalizer of SplitMix64. */
+  private static long mix(long hash) {
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ (hash >>> 31);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.Tree;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Per-file index of a snapshot for {@link JavacASTQuery}: the nodes of each kind as a bitset, and
+ * postings from each name, element and type string to the nodes that have it. It is built from
+ * the snapshot, so files read from the cache are indexed without running javac.
+ *
+ * <p>Since ids are in pre-order, the descendants of a node are the ids in
+ * {@code (node, getSubtreeEnd(node))}, which lets a query take whole subtrees in or out at once.
+ */
+public class JavacASTIndex {
+
+  /** A string attribute of the nodes. */
+  enum Field {
+    NAME, ELEMENT, TYPE
+  }
+
+  private static final Tree.Kind[] KINDS = Tree.Kind.values();
+
+  private final JavacASTSnapshot snapshot;
+  private final BitSet[] kinds;
+  private final int[] subtreeEnds;
+  private final Map<Field, Map<String, int[]>> postings;
+
+  private JavacASTIndex(JavacASTSnapshot snapshot, BitSet[] kinds, int[] subtreeEnds,
+      Map<Field, Map<String, int[]>> postings) {
+    this.snapshot = snapshot;
+    this.kinds = kinds;
+    this.subtreeEnds = subtreeEnds;
+    this.postings = postings;
+  }
+
+  static JavacASTIndex of(JavacASTSnapshot snapshot) {
+    int size = snapshot.size();
+    BitSet[] kinds = new BitSet[KINDS.length];
+    int[] subtreeEnds = new int[size];
+    for (int node = 0; node < size; node++) {
+      int kind = snapshot.getKind(node).ordinal();
+      if (kinds[kind] == null) {
+        kinds[kind] = new BitSet(size);
+      }
+      kinds[kind].set(node);
+      subtreeEnds[node] = node + 1;
+    }
+    // Children come after their parents, so one backwards pass sees every subtree complete.
+    for (int node = size - 1; node > 0; node--) {
+      int parent = snapshot.getParent(node);
+      subtreeEnds[parent] = Math.max(subtreeEnds[parent], subtreeEnds[node]);
+    }
+    Map<Field, Map<String, int[]>> postings = new EnumMap<>(Field.class);
+    postings.put(Field.NAME, postings(size, snapshot::getName));
+    postings.put(Field.ELEMENT, postings(size, snapshot::getElement));
+    postings.put(Field.TYPE, postings(size, snapshot::getType));
+    return new JavacASTIndex(snapshot, kinds, subtreeEnds, postings);
+  }
+
+  private static Map<String, int[]> postings(int size, IntFunction<String> values) {
+    Map<String, int[]> counts = new HashMap<>();
+    for (int node = 0; node < size; node++) {
+      String value = values.apply(node);
+      if (value != null) {
+        counts.computeIfAbsent(value, v -> new int[1])[0]++;
+      }
+    }
+    Map<String, int[]> postings = new HashMap<>(counts.size() * 2);
+    counts.forEach((value, count) -> postings.put(value, new int[count[0]]));
+    // Reuses the counts as fill positions.
+    counts.values().forEach(count -> count[0] = 0);
+    for (int node = 0; node < size; node++) {
+      String value = values.apply(node);
+      if (value != null) {
+        postings.get(value)[counts.get(value)[0]++] = node;
+      }
+    }
+    return postings;
+  }
+
+  JavacASTSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  int size() {
+    return snapshot.size();
+  }
+
+  boolean hasKind(Tree.Kind kind) {
+    return kinds[kind.ordinal()] != null;
+  }
+
+  /** Returns the nodes of a kind; the bitset is shared and must not be modified. */
+  BitSet getNodes(Tree.Kind kind) {
+    BitSet nodes = kinds[kind.ordinal()];
+    return nodes == null ? new BitSet() : nodes;
+  }
+
+  /** Returns the ids of the nodes whose field is {@code value}, in pre-order, or null. */
+  int[] getNodes(Field field, String value) {
+    return postings.get(field).get(value);
+  }
+
+  /** Returns the distinct values of a field in this file. */
+  Iterable<String> getValues(Field field) {
+    return postings.get(field).keySet();
+  }
+
+  /** Returns the first id after the subtree of {@code node}. */
+  int getSubtreeEnd(int node) {
+    return subtreeEnds[node];
+  }
+}
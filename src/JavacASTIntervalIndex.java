@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Maps source offsets to the snapshot nodes whose {@code [start, end)} ranges cover them.
+ *
+ * <p>The start and end positions of all the nodes split the source into elementary segments,
+ * and each segment stores its innermost covering node, so {@link #nodeAt(int)} is one binary
+ * search. Each node also links to the node that was open around it when it started, which is
+ * usually, but not always, its parent: javac gives some synthetic nodes the range of a sibling.
+ * Nodes without a position or with an empty range are not indexed.
+ */
+public class JavacASTIntervalIndex {
+
+  private final JavacASTSnapshot snapshot;
+  private final int[] points;
+  private final int[] innermost;
+  private final int[] enclosing;
+  private final int[] byStart;
+  private final int[] starts;
+
+  private JavacASTIntervalIndex(JavacASTSnapshot snapshot, int[] points, int[] innermost,
+      int[] enclosing, int[] byStart, int[] starts) {
+    this.snapshot = snapshot;
+    this.points = points;
+    this.innermost = innermost;
+    this.enclosing = enclosing;
+    this.byStart = byStart;
+    this.starts = starts;
+  }
+
+  static JavacASTIntervalIndex of(JavacASTSnapshot snapshot) {
+    // Sorting by start then id puts ancestors before the descendants that share their start.
+    long[] keys = new long[snapshot.size()];
+    int count = 0;
+    for (int node = 0; node < snapshot.size(); node++) {
+      int start = snapshot.getStartPosition(node);
+      if (start >= 0 && snapshot.getEndPosition(node) > start) {
+        keys[count++] = ((long) start << 32) | node;
+      }
+    }
+    Arrays.sort(keys, 0, count);
+    int[] byStart = new int[count];
+    int[] starts = new int[count];
+    int[] points = new int[2 * count];
+    for (int i = 0; i < count; i++) {
+      byStart[i] = (int) keys[i];
+      starts[i] = (int) (keys[i] >>> 32);
+      points[2 * i] = starts[i];
+      points[2 * i + 1] = snapshot.getEndPosition(byStart[i]);
+    }
+    Arrays.sort(points);
+    int unique = 0;
+    for (int i = 0; i < points.length; i++) {
+      if (unique == 0 || points[unique - 1] != points[i]) {
+        points[unique++] = points[i];
+      }
+    }
+    points = Arrays.copyOf(points, unique);
+
+    // Sweeps the segments keeping the open nodes on a stack; ended nodes are dropped once they
+    // reach the top.
+    int[] innermost = new int[unique];
+    int[] enclosing = new int[snapshot.size()];
+    Arrays.fill(enclosing, JavacASTSnapshot.NONE);
+    int[] stack = new int[count];
+    int top = 0;
+    int next = 0;
+    for (int k = 0; k < unique; k++) {
+      int point = points[k];
+      while (top > 0 && snapshot.getEndPosition(stack[top - 1]) <= point) {
+        top--;
+      }
+      while (next < count && starts[next] == point) {
+        enclosing[byStart[next]] = top > 0 ? stack[top - 1] : JavacASTSnapshot.NONE;
+        stack[top++] = byStart[next++];
+      }
+      innermost[k] = top > 0 ? stack[top - 1] : JavacASTSnapshot.NONE;
+    }
+    return new JavacASTIntervalIndex(snapshot, points, innermost, enclosing, byStart, starts);
+  }
+
+  /** Returns the innermost node that covers {@code offset}, or {@link JavacASTSnapshot#NONE}. */
+  int nodeAt(int offset) {
+    int k = Arrays.binarySearch(points, offset);
+    if (k < 0) {
+      k = -k - 2;
+    }
+    return k < 0 ? JavacASTSnapshot.NONE : innermost[k];
+  }
+
+  /** Returns the nodes whose ranges overlap {@code [start, end)}, in pre-order. */
+  int[] nodesOverlapping(int start, int end) {
+    if (end <= start) {
+      return new int[0];
+    }
+    int from = lowerBound(start);
+    int to = lowerBound(end);
+    int[] nodes = new int[to - from + 64];
+    int count = 0;
+    for (int node = nodeAt(start); node != JavacASTSnapshot.NONE; node = enclosing[node]) {
+      if (snapshot.getStartPosition(node) < start && snapshot.getEndPosition(node) > start) {
+        if (count == nodes.length) {
+          nodes = Arrays.copyOf(nodes, count * 2);
+        }
+        nodes[count++] = node;
+      }
+    }
+    for (int i = from; i < to; i++) {
+      if (count == nodes.length) {
+        nodes = Arrays.copyOf(nodes, count * 2);
+      }
+      nodes[count++] = byStart[i];
+    }
+    nodes = Arrays.copyOf(nodes, count);
+    Arrays.sort(nodes);
+    return nodes;
+  }
+
+  private int lowerBound(int offset) {
+    int low = 0;
+    int high = starts.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (starts[mid] < offset) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,438 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.CaseTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IfTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Headless entry point that computes the metrics of every class and method in the given files
+ * and directories, and writes them to standard output as newline-delimited JSON: cyclomatic
+ * complexity, nesting depth, and the number of statements, expressions and nodes. Totals, the
+ * distribution of method complexities and the number of nodes of each kind are printed on
+ * standard error.
+ *
+ * <p>Metrics are counted while javac's tree is scanned, as each node is added and ends, so no
+ * tree is built. Files are only parsed. They are split across a fork/join pool, each task
+ * accumulates its own totals, and the totals are merged as the tasks are joined.
+ */
+public class JavacASTMetrics {
+
+  private static final Tree.Kind[] KINDS = Tree.Kind.values();
+  private static final Set<Tree.Kind> DECISIONS = EnumSet.of(Tree.Kind.IF,
+      Tree.Kind.CONDITIONAL_EXPRESSION, Tree.Kind.FOR_LOOP, Tree.Kind.ENHANCED_FOR_LOOP,
+      Tree.Kind.WHILE_LOOP, Tree.Kind.DO_WHILE_LOOP, Tree.Kind.CASE, Tree.Kind.CATCH,
+      Tree.Kind.CONDITIONAL_AND, Tree.Kind.CONDITIONAL_OR);
+  private static final Set<Tree.Kind> NESTING = EnumSet.of(Tree.Kind.IF, Tree.Kind.FOR_LOOP,
+      Tree.Kind.ENHANCED_FOR_LOOP, Tree.Kind.WHILE_LOOP, Tree.Kind.DO_WHILE_LOOP,
+      Tree.Kind.SWITCH, Tree.Kind.TRY, Tree.Kind.SYNCHRONIZED);
+  private static final boolean[] STATEMENTS = new boolean[KINDS.length];
+  private static final boolean[] EXPRESSIONS = new boolean[KINDS.length];
+  /** Upper bounds of the buckets of the method complexity histogram. */
+  private static final int[] COMPLEXITY_BUCKETS = {1, 4, 9, 19, 49, Integer.MAX_VALUE};
+
+  static {
+    for (Tree.Kind kind : KINDS) {
+      Class<? extends Tree> type = kind.asInterface();
+      // Local classes and variables are statements too; variables are told apart by parent.
+      STATEMENTS[kind.ordinal()] = type != null && StatementTree.class.isAssignableFrom(type)
+          && kind != Tree.Kind.BLOCK && kind != Tree.Kind.VARIABLE
+          && !ClassTree.class.isAssignableFrom(type);
+      EXPRESSIONS[kind.ordinal()] = type != null && ExpressionTree.class.isAssignableFrom(type);
+    }
+  }
+
+  private final List<Path> sources;
+  private final boolean kinds;
+  private final Writer out;
+
+  JavacASTMetrics(List<Path> sources, boolean kinds, Writer out) {
+    this.sources = sources;
+    this.kinds = kinds;
+    this.out = out;
+  }
+
+  /** What one task adds up over its files, merged when the task is joined. */
+  static final class Totals {
+    long files;
+    long failures;
+    long classes;
+    long methods;
+    long nodes;
+    long parseNanos;
+    long visitNanos;
+    final long[] kinds = new long[KINDS.length];
+    final long[] complexities = new long[COMPLEXITY_BUCKETS.length];
+
+    void merge(Totals other) {
+      files += other.files;
+      failures += other.failures;
+      classes += other.classes;
+      methods += other.methods;
+      nodes += other.nodes;
+      parseNanos += other.parseNanos;
+      visitNanos += other.visitNanos;
+      for (int i = 0; i < kinds.length; i++) {
+        kinds[i] += other.kinds[i];
+      }
+      for (int i = 0; i < complexities.length; i++) {
+        complexities[i] += other.complexities[i];
+      }
+    }
+  }
+
+  /** The metrics of a class or method, counted over its nodes outside nested classes. */
+  private static final class Scope {
+    final Scope parent;
+    final Tree.Kind kind;
+    final String name;
+    final long line;
+    int complexity;
+    int nesting;
+    int maxNesting;
+    int methods;
+    int statements;
+    int expressions;
+    int nodes;
+    final int[] kinds;
+
+    Scope(Scope parent, Tree.Kind kind, String name, long line, boolean kinds) {
+      this.parent = parent;
+      this.kind = kind;
+      this.name = name;
+      this.line = line;
+      this.complexity = kind == Tree.Kind.METHOD ? 1 : 0;
+      this.kinds = kinds ? new int[KINDS.length] : null;
+    }
+
+    /** Adds the method's metrics to its class. */
+    void addMethod(Scope method) {
+      methods++;
+      complexity += method.complexity;
+      maxNesting = Math.max(maxNesting, method.maxNesting);
+      statements += method.statements;
+      expressions += method.expressions;
+      nodes += method.nodes;
+      if (kinds != null) {
+        for (int i = 0; i < kinds.length; i++) {
+          kinds[i] += method.kinds[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the nodes of one file into the innermost class or method as they are added, and
+   * writes the metrics of each when it ends. Lambdas count toward their enclosing method.
+   */
+  private final class FileMetrics implements JavacASTBuilder<Scope> {
+
+    private static final int NESTED = 1;
+    private static final int SCOPE = 2;
+
+    private final Totals totals;
+    private final Writer records;
+    private final String file;
+    /** Whether each open node deepened the nesting or opened a scope. */
+    private byte[] open = new byte[64];
+    private int depth;
+    private Scope scope;
+
+    FileMetrics(Totals totals, Writer records, String file) {
+      this.totals = totals;
+      this.records = records;
+      this.file = file;
+    }
+
+    @Override
+    public Scope add(Scope parent, TreePath path, Element element, TypeMirror typeMirror,
+        long startPosition, long endPosition) {
+      Tree tree = path.getLeaf();
+      Tree.Kind kind = tree.getKind();
+      totals.nodes++;
+      totals.kinds[kind.ordinal()]++;
+      int flags = 0;
+      if (tree instanceof ClassTree || kind == Tree.Kind.METHOD) {
+        CharSequence name = tree instanceof ClassTree
+            ? ((ClassTree) tree).getSimpleName() : JavacASTNode.getName(tree);
+        scope = new Scope(scope, kind,
+            (scope == null ? "" : scope.name + ".") + (name.length() == 0 ? "<anonymous>" : name),
+            path.getCompilationUnit().getLineMap().getLineNumber(startPosition), kinds);
+        flags |= SCOPE;
+      }
+      if (scope != null && count(path, kind)) {
+        flags |= NESTED;
+      }
+      if (depth == open.length) {
+        open = Arrays.copyOf(open, depth * 2);
+      }
+      open[depth++] = (byte) flags;
+      return scope;
+    }
+
+    /** Counts a node into the current scope, and returns whether it deepens the nesting. */
+    @SuppressWarnings("deprecation") // getExpressions() is not available on Java 8.
+    private boolean count(TreePath path, Tree.Kind kind) {
+      Tree tree = path.getLeaf();
+      Tree parent = path.getParentPath() == null ? null : path.getParentPath().getLeaf();
+      scope.nodes++;
+      if (scope.kinds != null) {
+        scope.kinds[kind.ordinal()]++;
+      }
+      if (DECISIONS.contains(kind)
+          && (kind != Tree.Kind.CASE || ((CaseTree) tree).getExpression() != null)) {
+        scope.complexity++;
+      }
+      if (STATEMENTS[kind.ordinal()] || kind == Tree.Kind.VARIABLE && parent != null
+          && (parent.getKind() == Tree.Kind.BLOCK || parent.getKind() == Tree.Kind.CASE)) {
+        scope.statements++;
+      }
+      if (EXPRESSIONS[kind.ordinal()]) {
+        scope.expressions++;
+      }
+      // An else-if continues its chain rather than nesting in it.
+      boolean nested = NESTING.contains(kind) && !(parent instanceof IfTree
+          && ((IfTree) parent).getElseStatement() == tree);
+      if (nested) {
+        scope.maxNesting = Math.max(scope.maxNesting, ++scope.nesting);
+      }
+      return nested;
+    }
+
+    @Override
+    public void end(Scope node) {
+      int flags = open[--depth];
+      if ((flags & NESTED) != 0) {
+        scope.nesting--;
+      }
+      if ((flags & SCOPE) == 0) {
+        return;
+      }
+      Scope ended = scope;
+      scope = ended.parent;
+      if (ended.kind == Tree.Kind.METHOD) {
+        totals.methods++;
+        totals.complexities[bucket(ended.complexity)]++;
+        if (scope != null) {
+          scope.addMethod(ended);
+        }
+      } else {
+        totals.classes++;
+      }
+      try {
+        write(ended);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void write(Scope scope) throws IOException {
+      records.write("{\"file\":");
+      JavacASTExport.NodeWriter.writeString(records, file);
+      records.write(",\"kind\":\"");
+      records.write(scope.kind.toString());
+      records.write("\",\"name\":");
+      JavacASTExport.NodeWriter.writeString(records, scope.name);
+      records.write(",\"line\":" + scope.line);
+      if (scope.kind != Tree.Kind.METHOD) {
+        records.write(",\"methods\":" + scope.methods);
+      }
+      records.write(",\"complexity\":" + scope.complexity);
+      records.write(",\"nesting\":" + scope.maxNesting);
+      records.write(",\"statements\":" + scope.statements);
+      records.write(",\"expressions\":" + scope.expressions);
+      records.write(",\"nodes\":" + scope.nodes);
+      if (scope.kinds != null) {
+        records.write(",\"kinds\":{");
+        String separator = "";
+        for (int i = 0; i < scope.kinds.length; i++) {
+          if (scope.kinds[i] > 0) {
+            records.write(separator + "\"" + KINDS[i] + "\":" + scope.kinds[i]);
+            separator = ",";
+          }
+        }
+        records.write("}");
+      }
+      records.write("}\n");
+    }
+  }
+
+  private static int bucket(int complexity) {
+    int bucket = 0;
+    while (complexity > COMPLEXITY_BUCKETS[bucket]) {
+      bucket++;
+    }
+    return bucket;
+  }
+
+  /** Computes the metrics of the sources in {@code [from, to)}, splitting the range in halves. */
+  private final class Task extends RecursiveTask<Totals> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JavacASTBatch batch;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    Task(JavacASTBatch batch, int from, int to, int grain) {
+      this.batch = batch;
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected Totals compute() {
+      if (to - from > grain) {
+        int middle = (from + to) >>> 1;
+        Task left = new Task(batch, from, middle, grain);
+        left.fork();
+        Totals totals = new Task(batch, middle, to, grain).compute();
+        totals.merge(left.join());
+        return totals;
+      }
+      Totals totals = new Totals();
+      for (int i = from; i < to; i++) {
+        measure(batch, sources.get(i), totals);
+      }
+      return totals;
+    }
+  }
+
+  /**
+   * Measures one file into {@code totals}. The file is counted apart and merged only once it is
+   * complete, so that a file that fails partway adds nothing but a failure.
+   */
+  private void measure(JavacASTBatch batch, Path source, Totals totals) {
+    StringWriter records = new StringWriter();
+    Totals file = new Totals();
+    try {
+      JavacASTStats stats = new JavacASTStats(source);
+      batch.visit(source, stats, new FileMetrics(file, records, source.toString()));
+      file.files++;
+      file.parseNanos += stats.getNanos(JavacASTStats.Phase.PARSE);
+      file.visitNanos += stats.getNanos(JavacASTStats.Phase.VISIT);
+      synchronized (out) {
+        out.write(records.toString());
+      }
+      totals.merge(file);
+    } catch (IOException | RuntimeException e) {
+      totals.failures++;
+      System.err.println(source + ": " + e);
+    }
+  }
+
+  /** Computes the metrics of all the sources on {@code threads} fork/join workers. */
+  Totals run(JavacASTBatch batch, int threads) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      // Several tasks per worker, so that workers left idle by small files can steal.
+      int grain = Math.max(1, sources.size() / (threads * 8));
+      return pool.invoke(new Task(batch, 0, sources.size(), grain));
+    } finally {
+      pool.shutdown();
+      out.flush();
+    }
+  }
+
+  /** Prints the totals, the histogram of method complexities and the counts of node kinds. */
+  static void print(Totals totals, double seconds) {
+    System.err.printf("%d files, %d classes, %d methods, %d nodes, %d failures in %.2fs "
+            + "(parse %.2fs, visit %.2fs over all threads)%n", totals.files, totals.classes,
+        totals.methods, totals.nodes, totals.failures, seconds, totals.parseNanos / 1e9,
+        totals.visitNanos / 1e9);
+    StringBuilder complexities = new StringBuilder("method complexity:");
+    for (int i = 0; i < COMPLEXITY_BUCKETS.length; i++) {
+      int low = i == 0 ? 1 : COMPLEXITY_BUCKETS[i - 1] + 1;
+      int high = COMPLEXITY_BUCKETS[i];
+      complexities.append(' ').append(low)
+          .append(high == low ? "" : high == Integer.MAX_VALUE ? "+" : "-" + high)
+          .append(": ").append(totals.complexities[i]);
+    }
+    System.err.println(complexities);
+    List<Tree.Kind> kinds = new ArrayList<>();
+    for (Tree.Kind kind : KINDS) {
+      if (totals.kinds[kind.ordinal()] > 0) {
+        kinds.add(kind);
+      }
+    }
+    kinds.sort((a, b) -> Long.compare(totals.kinds[b.ordinal()], totals.kinds[a.ordinal()]));
+    for (Tree.Kind kind : kinds) {
+      System.err.printf("  %-28s %d%n", kind, totals.kinds[kind.ordinal()]);
+    }
+  }
+
+  public static void main(String[] args) {
+    boolean kinds = false;
+    int threads = Runtime.getRuntime().availableProcessors();
+    JavacASTFilter.Builder filter = new JavacASTFilter.Builder();
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--kinds")) {
+        kinds = true;
+      } else if (args[i].equals("--threads") && i < args.length - 1) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (JavacASTFilter.OPTIONS.contains(args[i])) {
+        i = filter.parse(args, i);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.isEmpty()) {
+      System.err.println("Usage: JavacASTMetrics [--kinds] [--threads <n>] [<filter options>] "
+          + "<file-or-directory>...");
+      System.exit(1);
+    }
+    long start = System.nanoTime();
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+        1 << 16);
+    try (JavacASTBatch batch = new JavacASTBatch(JavacASTParser.Mode.PARSE_ONLY,
+        Collections.emptyList(), filter.build(), null)) {
+      JavacASTMetrics metrics =
+          new JavacASTMetrics(JavacASTBatch.collectSources(paths), kinds, out);
+      print(metrics.run(batch, threads), (System.nanoTime() - start) / 1e9);
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println(e);
+      System.exit(1);
+    }
+  }
+}
@@ -17,7 +17,14 @@
  * under the License.
  */
 
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeParameterTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -28,8 +35,10 @@ import javax.lang.model.type.TypeMirror;
 public class JavacASTNode {
 
   private final Tree tree;
-  private final Element element;
-  private final TypeMirror typeMirror;
+  private TreePath path;
+  private JavacASTAttributor attributor;
+  private Element element;
+  private TypeMirror typeMirror;
   private final long startPosition;
   private final long endPosition;
   private final List<JavacASTNode> children = new ArrayList<>();
@@ -43,6 +52,13 @@ public class JavacASTNode {
     this.endPosition = endPosition;
   }
 
+  JavacASTNode(TreePath path, JavacASTAttributor attributor, long startPosition,
+      long endPosition) {
+    this(path.getLeaf(), null, null, startPosition, endPosition);
+    this.path = path;
+    this.attributor = attributor;
+  }
+
   void addChild(JavacASTNode child) {
     children.add(child);
   }
@@ -52,13 +68,29 @@ public class JavacASTNode {
   }
 
   Optional<Element> getElement() {
+    attribute();
     return Optional.ofNullable(element);
   }
 
   Optional<TypeMirror> getTypeMirror() {
+    attribute();
     return Optional.ofNullable(typeMirror);
   }
 
+  synchronized boolean isAttributed() {
+    return attributor == null;
+  }
+
+  private synchronized void attribute() {
+    if (attributor == null) {
+      return;
+    }
+    element = attributor.getElement(path);
+    typeMirror = attributor.getTypeMirror(path);
+    attributor = null;
+    path = null;
+  }
+
   long getStartPosition() {
     return startPosition;
   }
@@ -74,9 +106,31 @@ public class JavacASTNode {
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder(tree.getKind().toString());
-    if (element != null && !element.getSimpleName().toString().isEmpty()) {
-      sb.append(" (").append(element.getSimpleName().toString()).append(")");
+    CharSequence name = getName();
+    if (name != null && name.length() > 0) {
+      sb.append(" (").append(name).append(")");
     }
     return sb.toString();
   }
+
+  synchronized CharSequence getName() {
+    return element != null ? element.getSimpleName() : getName(tree);
+  }
+
+  static CharSequence getName(Tree tree) {
+    if (tree instanceof ClassTree) {
+      return ((ClassTree) tree).getSimpleName();
+    } else if (tree instanceof MethodTree) {
+      return ((MethodTree) tree).getName();
+    } else if (tree instanceof VariableTree) {
+      return ((VariableTree) tree).getName();
+    } else if (tree instanceof TypeParameterTree) {
+      return ((TypeParameterTree) tree).getName();
+    } else if (tree instanceof IdentifierTree) {
+      return ((IdentifierTree) tree).getName();
+    } else if (tree instanceof MemberSelectTree) {
+      return ((MemberSelectTree) tree).getIdentifier();
+    }
+    return null;
+  }
 }
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Trees;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.lang.model.element.Element;
+import javax.tools.DiagnosticListener;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Runs javac over source files and builds their {@link JavacASTNode} trees or snapshots.
+ *
+ * <p>A parser keeps its file manager open between calls, so the platform classes it has already
+ * located are reused by every task it creates. The file manager is not thread-safe: use one
+ * parser per thread. In {@link Mode#LAZY} the parser must stay open while nodes are attributed.
+ */
+public class JavacASTParser implements Closeable {
+
+  /** How much semantic information is computed for the nodes. */
+  enum Mode {
+    /** Attributes the whole file before the visit. */
+    ANALYZE,
+    /** Attributes on the first {@link JavacASTNode#getElement()} or type request. */
+    LAZY,
+    /** Only parses: nodes have kinds and positions, but no elements or types. */
+    PARSE_ONLY
+  }
+
+  /** javac options that name where referenced types are found, each followed by a value. */
+  static final List<String> PATH_OPTIONS = Arrays.asList("-sourcepath", "--source-path",
+      "-classpath", "-cp", "--class-path", "--module-path");
+
+  private final Mode mode;
+  private final List<String> options;
+  private final JavacASTFilter filter;
+  private final JavaCompiler compiler;
+  private final StandardJavaFileManager fileManager;
+  private final DiagnosticListener<? super JavaFileObject> diagnosticListener;
+
+  JavacASTParser() {
+    this(Mode.ANALYZE, null);
+  }
+
+  JavacASTParser(Mode mode, DiagnosticListener<? super JavaFileObject> diagnosticListener) {
+    this(mode, Collections.emptyList(), diagnosticListener);
+  }
+
+  JavacASTParser(Mode mode, List<String> options,
+      DiagnosticListener<? super JavaFileObject> diagnosticListener) {
+    this(mode, options, JavacASTFilter.ALL, diagnosticListener);
+  }
+
+  /**
+   * Creates a parser whose tasks are given javac {@code options}, such as a class path, and whose
+   * visits keep only the subtrees {@code filter} accepts.
+   */
+  JavacASTParser(Mode mode, List<String> options, JavacASTFilter filter,
+      DiagnosticListener<? super JavaFileObject> diagnosticListener) {
+    this.mode = mode;
+    this.options = options;
+    this.filter = filter;
+    this.compiler = ToolProvider.getSystemJavaCompiler();
+    this.fileManager = compiler.getStandardFileManager(diagnosticListener, null, null);
+    this.diagnosticListener = diagnosticListener;
+  }
+
+  JavacASTNode parse(Path file) throws IOException {
+    return parse(file, new JavacASTStats(file));
+  }
+
+  @SuppressWarnings("try")
+  JavacASTNode parse(Path file, JavacASTStats stats) throws IOException {
+    JavacTask task = newTask(file, stats);
+    CompilationUnitTree ast = parse(task, stats).get(0);
+    JavacASTAttributor attributor = new JavacASTAttributor(task);
+    if (mode == Mode.ANALYZE) {
+      try (JavacASTStats.Timer timer = stats.start(JavacASTStats.Phase.ANALYZE)) {
+        attributor.analyze();
+      }
+    }
+    try (JavacASTStats.Timer timer = stats.start(JavacASTStats.Phase.VISIT)) {
+      return JavacASTVisitor.visit(ast, attributor, mode, filter);
+    }
+  }
+
+  JavacASTSnapshot snapshot(Path file) throws IOException {
+    return snapshot(file, new JavacASTStats(file));
+  }
+
+  /**
+   * Visits the file into a snapshot, which keeps no reference to the task. {@link Mode#LAZY}
+   * behaves as {@link Mode#PARSE_ONLY} here, since nothing is left to attribute later.
+   */
+  JavacASTSnapshot snapshot(Path file, JavacASTStats stats) throws IOException {
+    return snapshot(Collections.singletonList(file), stats).get(0);
+  }
+
+  /**
+   * Visits the files of one shared compilation into snapshots, in the order of {@code files}. The
+   * snapshots share one symbol table, so their symbol ids can be cross-referenced together.
+   */
+  List<JavacASTSnapshot> snapshot(List<Path> files, JavacASTStats stats) throws IOException {
+    Map<Path, JavacASTSnapshot.Builder> builders = new HashMap<>();
+    Map<Element, Integer> symbolIds = new HashMap<>();
+    visit(files, stats, file -> builders.computeIfAbsent(file,
+        f -> new JavacASTSnapshot.Builder(symbolIds)));
+    List<JavacASTSnapshot> snapshots = new ArrayList<>(files.size());
+    for (Path file : files) {
+      snapshots.add(builders.get(file).build());
+    }
+    return snapshots;
+  }
+
+  /**
+   * Visits the file into {@code builder} in pre-order and returns its root. As in
+   * {@link #snapshot(Path, JavacASTStats)}, nodes are never attributed lazily.
+   */
+  <N> N visit(Path file, JavacASTStats stats, JavacASTBuilder<N> builder) throws IOException {
+    return visit(Collections.singletonList(file), stats, f -> builder).get(0);
+  }
+
+  /**
+   * Parses the files in one task and analyzes them together, so the symbols they share are
+   * completed once, then visits each file into the builder {@code builders} returns for it. The
+   * roots are returned in the order of {@code files}.
+   */
+  @SuppressWarnings("try")
+  <N> List<N> visit(List<Path> files, JavacASTStats stats,
+      Function<Path, JavacASTBuilder<N>> builders) throws IOException {
+    Map<URI, Path> units = new HashMap<>();
+    JavacTask task = newTask(files, stats, units);
+    List<CompilationUnitTree> asts = parse(task, stats);
+    if (mode == Mode.ANALYZE) {
+      try (JavacASTStats.Timer timer = stats.start(JavacASTStats.Phase.ANALYZE)) {
+        task.analyze();
+      }
+    }
+    Map<Path, N> roots = new HashMap<>();
+    try (JavacASTStats.Timer timer = stats.start(JavacASTStats.Phase.VISIT)) {
+      Trees trees = Trees.instance(task);
+      for (CompilationUnitTree ast : asts) {
+        Path file = units.get(ast.getSourceFile().toUri());
+        roots.put(file, JavacASTVisitor.visit(ast, trees, mode == Mode.ANALYZE, filter,
+            builders.apply(file)));
+      }
+    }
+    List<N> ordered = new ArrayList<>(files.size());
+    for (Path file : files) {
+      ordered.add(roots.get(file));
+    }
+    return ordered;
+  }
+
+  @SuppressWarnings("try")
+  private static List<CompilationUnitTree> parse(JavacTask task, JavacASTStats stats)
+      throws IOException {
+    List<CompilationUnitTree> asts = new ArrayList<>();
+    try (JavacASTStats.Timer timer = stats.start(JavacASTStats.Phase.PARSE)) {
+      task.parse().forEach(asts::add);
+    }
+    return asts;
+  }
+
+  JavacTask newTask(Path file) {
+    return newTask(file, new JavacASTStats(file));
+  }
+
+  private JavacTask newTask(Path file, JavacASTStats stats) {
+    return newTask(Collections.singletonList(file), stats, null);
+  }
+
+  /**
+   * Creates a task over the files whose reads are timed as {@link JavacASTStats.Phase#READ}, and
+   * records the file of each compilation unit by URI in {@code units} unless it is null.
+   */
+  private JavacTask newTask(List<Path> files, JavacASTStats stats,
+      Map<URI, Path> units) {
+    List<JavaFileObject> compilationUnits = new ArrayList<>();
+    for (Path file : files) {
+      JavaFileObject unit = new ForwardingJavaFileObject<JavaFileObject>(
+          fileManager.getJavaFileObjects(file.toFile()).iterator().next()) {
+        @Override
+        @SuppressWarnings("try")
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+          try (JavacASTStats.Timer timer = stats.start(JavacASTStats.Phase.READ)) {
+            return super.getCharContent(ignoreEncodingErrors);
+          }
+        }
+      };
+      compilationUnits.add(unit);
+      if (units != null) {
+        units.put(unit.toUri(), file);
+      }
+    }
+    return (JavacTask) compiler.getTask(null, fileManager, diagnosticListener, options, null,
+        compilationUnits);
+  }
+
+  @Override
+  public void close() throws IOException {
+    fileManager.close();
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * javac plugin that snapshots or exports the tree of each compilation unit while a build compiles
+ * it, so that the trees come from the build's own parse and analysis and only the visit is added
+ * to it. With {@code --cache} the snapshots are stored in the viewer's cache, where opening an
+ * unchanged file finds them; with {@code --export <file>} the nodes are appended to the file in
+ * the format of {@link JavacASTExport}.
+ * <pre>
+ * javac -cp jast.jar -Xplugin:"JavacAST [--parse-only] [--cache] [--export file] [filters]" ...
+ * </pre>
+ *
+ * <p>javac analyzes, then lowers, one top-level class at a time, and lowering rewrites the tree.
+ * So the package and imports of a unit are visited when its first class is analyzed, and each
+ * class as soon as it is, into a buffer; the classes are added in source order once the last one
+ * is analyzed, whatever order javac analyzed them in. A unit whose classes are not all analyzed,
+ * because the compilation stopped at an error, is reported and left out. With {@code
+ * --parse-only} units are visited whole once parsed.
+ */
+public class JavacASTPlugin implements Plugin, TaskListener {
+
+  private JavacASTParser.Mode mode = JavacASTParser.Mode.ANALYZE;
+  private JavacASTFilter filter;
+  private JavacASTCache cache;
+  private Writer export;
+  private Trees trees;
+  private final Map<CompilationUnitTree, Unit> units = new HashMap<>();
+
+  /** A compilation unit whose classes are visited as they are analyzed. */
+  private final class Unit {
+    final Path file;
+    final JavacASTSnapshot.Builder snapshot;
+    final StringWriter nodes;
+    final JavacASTExport.NodeWriter writer;
+    final JavacASTBuilder<Integer> builder;
+    /** The top-level classes in source order, and their nodes once they are visited. */
+    final List<Tree> classes = new ArrayList<>();
+    final ClassNodes[] visited;
+    int remaining;
+    Integer root;
+
+    Unit(CompilationUnitTree tree) {
+      file = Paths.get(tree.getSourceFile().toUri());
+      snapshot = cache == null ? null : new JavacASTSnapshot.Builder();
+      nodes = export == null ? null : new StringWriter();
+      writer = nodes == null ? null : new JavacASTExport.NodeWriter(nodes, file.toString());
+      if (writer == null) {
+        builder = snapshot;
+      } else if (snapshot == null) {
+        builder = writer;
+      } else {
+        // Both number the nodes in pre-order, so they agree on the handles.
+        builder = (parent, path, element, typeMirror, startPosition, endPosition) -> {
+          writer.add(parent, path, element, typeMirror, startPosition, endPosition);
+          return snapshot.add(parent, path, element, typeMirror, startPosition, endPosition);
+        };
+      }
+      for (Tree type : tree.getTypeDecls()) {
+        if (type instanceof ClassTree) {
+          classes.add(type);
+        }
+      }
+      visited = new ClassNodes[classes.size()];
+      remaining = classes.size();
+    }
+
+    /** Adds the nodes of the classes under the root in source order. */
+    void addClasses() {
+      for (ClassNodes nodes : visited) {
+        int[] handles = new int[nodes.size()];
+        for (int i = 0; i < handles.length; i++) {
+          ClassNodes.Node node = nodes.get(i);
+          int parent = node.parent == ClassNodes.ROOT ? root : handles[node.parent];
+          if (snapshot != null) {
+            handles[i] = snapshot.add(parent, node.kind, node.name, node.element,
+                node.typeMirror, node.startPosition, node.endPosition);
+          }
+          if (writer != null) {
+            handles[i] = writer.add(parent, node.kind, node.name, node.element, node.typeMirror,
+                node.startPosition, node.endPosition);
+          }
+        }
+      }
+    }
+
+    /** Stores the snapshot in the cache and appends the nodes to the export. */
+    void finish() throws IOException {
+      if (snapshot != null) {
+        cache.put(file, mode, filter, snapshot.build());
+      }
+      if (nodes != null) {
+        export.write(nodes.toString());
+        export.flush();
+      }
+    }
+  }
+
+  /**
+   * The nodes of a top-level class, recorded while its tree is intact: lowering renames nested
+   * classes, so the kind and name of each node are taken as it is visited.
+   */
+  private static final class ClassNodes implements JavacASTBuilder<Integer> {
+    /** The handle of the unit's root, under which the class is added. */
+    static final int ROOT = -1;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    static final class Node {
+      final int parent;
+      final Tree.Kind kind;
+      final CharSequence name;
+      final Element element;
+      final TypeMirror typeMirror;
+      final long startPosition;
+      final long endPosition;
+
+      Node(int parent, Tree.Kind kind, CharSequence name, Element element, TypeMirror typeMirror,
+          long startPosition, long endPosition) {
+        this.parent = parent;
+        this.kind = kind;
+        this.name = name;
+        this.element = element;
+        this.typeMirror = typeMirror;
+        this.startPosition = startPosition;
+        this.endPosition = endPosition;
+      }
+    }
+
+    @Override
+    public Integer add(Integer parent, TreePath path, Element element, TypeMirror typeMirror,
+        long startPosition, long endPosition) {
+      Tree tree = path.getLeaf();
+      // Names are immutable; it is the tree's reference to its name that lowering replaces.
+      CharSequence name = element != null ? element.getSimpleName() : JavacASTNode.getName(tree);
+      nodes.add(new Node(parent, tree.getKind(), name, element, typeMirror, startPosition,
+          endPosition));
+      return nodes.size() - 1;
+    }
+
+    Node get(int node) {
+      return nodes.get(node);
+    }
+
+    int size() {
+      return nodes.size();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "JavacAST";
+  }
+
+  @Override
+  public void init(JavacTask task, String... args) {
+    JavacASTFilter.Builder filter = new JavacASTFilter.Builder();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--parse-only")) {
+          mode = JavacASTParser.Mode.PARSE_ONLY;
+        } else if (args[i].equals("--cache")) {
+          cache = new JavacASTCache(JavacASTCache.defaultDirectory());
+        } else if (args[i].equals("--export") && i < args.length - 1) {
+          export = Files.newBufferedWriter(Paths.get(args[++i]), StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } else if (JavacASTFilter.OPTIONS.contains(args[i])) {
+          i = filter.parse(args, i);
+        } else {
+          throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (cache == null && export == null) {
+      throw new IllegalArgumentException("Usage: -Xplugin:\"JavacAST [--parse-only] [--cache] "
+          + "[--export <file>] [<filter options>]\", with --cache or --export or both");
+    }
+    this.filter = filter.build();
+    trees = Trees.instance(task);
+    task.addTaskListener(this);
+  }
+
+  @Override
+  public void started(TaskEvent event) {
+  }
+
+  @Override
+  public void finished(TaskEvent event) {
+    if (event.getKind() == TaskEvent.Kind.COMPILATION) {
+      for (Unit unit : units.values()) {
+        System.err.println(unit.file + ": " + unit.remaining + " of " + unit.classes.size()
+            + " classes not analyzed, not visited");
+      }
+      units.clear();
+      // Long-lived compilers, such as build daemons, would otherwise keep the file open.
+      if (export != null) {
+        try {
+          export.close();
+        } catch (IOException e) {
+          System.err.println("Closing the export: " + e);
+        }
+        export = null;
+      }
+      return;
+    }
+    CompilationUnitTree tree = event.getCompilationUnit();
+    try {
+      if (event.getKind() == TaskEvent.Kind.PARSE && mode == JavacASTParser.Mode.PARSE_ONLY) {
+        Unit unit = new Unit(tree);
+        JavacASTVisitor.visit(tree, trees, false, filter, unit.builder);
+        unit.finish();
+      } else if (event.getKind() == TaskEvent.Kind.ANALYZE
+          && mode == JavacASTParser.Mode.ANALYZE) {
+        analyzed(tree,
+            event.getTypeElement() == null ? null : trees.getPath(event.getTypeElement()));
+      }
+    } catch (IOException | RuntimeException e) {
+      // A failed visit loses one file, not the build.
+      units.remove(tree);
+      System.err.println(tree.getSourceFile().getName() + ": " + e);
+    }
+  }
+
+  /**
+   * Visits the class at {@code path}, and the rest of the unit with its first class; once the
+   * last class is visited, adds them all and finishes the unit.
+   */
+  private void analyzed(CompilationUnitTree tree, TreePath path) throws IOException {
+    Unit unit = units.get(tree);
+    if (unit == null) {
+      unit = new Unit(tree);
+      if (unit.remaining == 0 || path == null) {
+        // A package-info or module-info has no class to wait for.
+        JavacASTVisitor.visit(tree, trees, true, filter, unit.builder);
+        unit.finish();
+        return;
+      }
+      unit.root = JavacASTVisitor.visitWithoutClasses(tree, trees, true, filter, unit.builder);
+      units.put(tree, unit);
+    } else if (path == null) {
+      return;
+    }
+    int index = unit.classes.indexOf(path.getLeaf());
+    if (index < 0 || unit.visited[index] != null) {
+      return;
+    }
+    ClassNodes nodes = new ClassNodes();
+    JavacASTVisitor.visitClass(path, ClassNodes.ROOT, trees, true, filter, nodes);
+    unit.visited[index] = nodes;
+    if (--unit.remaining == 0) {
+      units.remove(tree);
+      unit.addClasses();
+      unit.builder.end(unit.root);
+      unit.finish();
+    }
+  }
+}
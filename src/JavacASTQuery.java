@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.Tree;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Selects nodes with a small selector language, evaluated against a {@link JavacASTIndex}.
+ *
+ * <p>A selector is a list of steps separated by spaces, meaning the next step matches a
+ * descendant, or by {@code >}, meaning it matches a child. A step is a {@link Tree.Kind} or
+ * {@code *}, followed by any number of {@code [field=value]} or {@code [field*=value]} filters on
+ * the {@code name}, {@code element} or {@code type} of the node, matching it exactly or as a
+ * substring. Values containing spaces or brackets are written in double quotes. The nodes
+ * selected are those matching the last step:
+ *
+ * <pre>
+ * LAMBDA_EXPRESSION METHOD_INVOCATION[element=println(java.lang.String)]
+ * CLASS > METHOD[name=equals] VARIABLE[type*=List]
+ * </pre>
+ */
+public class JavacASTQuery {
+
+  private static final class Filter {
+    final JavacASTIndex.Field field;
+    final boolean substring;
+    final String value;
+
+    Filter(JavacASTIndex.Field field, boolean substring, String value) {
+      this.field = field;
+      this.substring = substring;
+      this.value = value;
+    }
+  }
+
+  private static final class Step {
+    final boolean child;
+    final Tree.Kind kind;
+    final List<Filter> filters = new ArrayList<>();
+
+    Step(boolean child, Tree.Kind kind) {
+      this.child = child;
+      this.kind = kind;
+    }
+  }
+
+  private final List<Step> steps;
+
+  private JavacASTQuery(List<Step> steps) {
+    this.steps = steps;
+  }
+
+  /** Parses a selector, throwing {@link IllegalArgumentException} if it is malformed. */
+  static JavacASTQuery parse(String selector) {
+    List<Step> steps = new ArrayList<>();
+    int i = 0;
+    boolean child = false;
+    while (true) {
+      while (i < selector.length() && Character.isWhitespace(selector.charAt(i))) {
+        i++;
+      }
+      if (i == selector.length()) {
+        break;
+      }
+      if (selector.charAt(i) == '>') {
+        if (steps.isEmpty() || child) {
+          throw new IllegalArgumentException("Misplaced '>' at " + i + " in " + selector);
+        }
+        child = true;
+        i++;
+        continue;
+      }
+      int start = i;
+      while (i < selector.length() && (Character.isJavaIdentifierPart(selector.charAt(i))
+          || selector.charAt(i) == '*')) {
+        i++;
+      }
+      String kind = selector.substring(start, i);
+      Step step;
+      try {
+        step = new Step(child, kind.equals("*") ? null : Tree.Kind.valueOf(kind));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown kind '" + kind + "' in " + selector);
+      }
+      while (i < selector.length() && selector.charAt(i) == '[') {
+        i = parseFilter(selector, i + 1, step);
+      }
+      steps.add(step);
+      child = false;
+    }
+    if (steps.isEmpty() || child) {
+      throw new IllegalArgumentException("Incomplete selector: " + selector);
+    }
+    return new JavacASTQuery(steps);
+  }
+
+  /** Parses the filter that starts after the {@code [} at {@code i}, returning the next index. */
+  private static int parseFilter(String selector, int i, Step step) {
+    int start = i;
+    while (i < selector.length() && Character.isLetter(selector.charAt(i))) {
+      i++;
+    }
+    JavacASTIndex.Field field;
+    try {
+      field = JavacASTIndex.Field.valueOf(selector.substring(start, i).toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown field '" + selector.substring(start, i)
+          + "' in " + selector);
+    }
+    boolean substring = selector.startsWith("*=", i);
+    if (!substring && !selector.startsWith("=", i)) {
+      throw new IllegalArgumentException("Expected '=' or '*=' at " + i + " in " + selector);
+    }
+    i += substring ? 2 : 1;
+    StringBuilder value = new StringBuilder();
+    if (i < selector.length() && selector.charAt(i) == '"') {
+      for (i++; i < selector.length() && selector.charAt(i) != '"'; i++) {
+        if (selector.charAt(i) == '\\' && i + 1 < selector.length()) {
+          i++;
+        }
+        value.append(selector.charAt(i));
+      }
+      i++;
+    } else {
+      for (; i < selector.length() && selector.charAt(i) != ']'; i++) {
+        value.append(selector.charAt(i));
+      }
+    }
+    if (i >= selector.length() || selector.charAt(i) != ']') {
+      throw new IllegalArgumentException("Unterminated filter in " + selector);
+    }
+    step.filters.add(new Filter(field, substring, value.toString()));
+    return i + 1;
+  }
+
+  /**
+   * Returns false if the file has no node of the kind or exact value of some step, which rules
+   * out a match without evaluating the selector.
+   */
+  boolean mayMatch(JavacASTIndex index) {
+    for (Step step : steps) {
+      if (step.kind != null && !index.hasKind(step.kind)) {
+        return false;
+      }
+      for (Filter filter : step.filters) {
+        if (!filter.substring && index.getNodes(filter.field, filter.value) == null) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Returns the ids of the nodes selected in the file, in pre-order. */
+  int[] match(JavacASTIndex index) {
+    if (!mayMatch(index)) {
+      return new int[0];
+    }
+    BitSet matched = candidates(steps.get(0), index);
+    for (int i = 1; i < steps.size() && !matched.isEmpty(); i++) {
+      Step step = steps.get(i);
+      BitSet candidates = candidates(step, index);
+      if (step.child) {
+        JavacASTSnapshot snapshot = index.getSnapshot();
+        BitSet children = new BitSet(index.size());
+        for (int node = candidates.nextSetBit(0); node >= 0;
+            node = candidates.nextSetBit(node + 1)) {
+          if (snapshot.getParent(node) != JavacASTSnapshot.NONE
+              && matched.get(snapshot.getParent(node))) {
+            children.set(node);
+          }
+        }
+        matched = children;
+      } else {
+        // Subtrees nested in one already taken are skipped: pre-order ranges nest.
+        BitSet descendants = new BitSet(index.size());
+        int end = 0;
+        for (int node = matched.nextSetBit(0); node >= 0; node = matched.nextSetBit(node + 1)) {
+          if (node >= end) {
+            end = index.getSubtreeEnd(node);
+            descendants.set(node + 1, end);
+          }
+        }
+        candidates.and(descendants);
+        matched = candidates;
+      }
+    }
+    return matched.stream().toArray();
+  }
+
+  private static BitSet candidates(Step step, JavacASTIndex index) {
+    BitSet candidates;
+    if (step.kind == null) {
+      candidates = new BitSet(index.size());
+      candidates.set(0, index.size());
+    } else {
+      candidates = (BitSet) index.getNodes(step.kind).clone();
+    }
+    for (Filter filter : step.filters) {
+      BitSet nodes = new BitSet(index.size());
+      if (filter.substring) {
+        for (String value : index.getValues(filter.field)) {
+          if (value.contains(filter.value)) {
+            set(nodes, index.getNodes(filter.field, value));
+          }
+        }
+      } else {
+        set(nodes, index.getNodes(filter.field, filter.value));
+      }
+      candidates.and(nodes);
+    }
+    return candidates;
+  }
+
+  private static void set(BitSet bits, int[] nodes) {
+    if (nodes != null) {
+      for (int node : nodes) {
+        bits.set(node);
+      }
+    }
+  }
+
+  /** Matches a file and formats each selected node as {@code file:line:column: node}. */
+  private List<String> run(JavacASTSnapshot snapshot, Path source) throws IOException {
+    JavacASTIndex index = JavacASTIndex.of(snapshot);
+    int[] nodes = match(index);
+    List<String> lines = new ArrayList<>(nodes.length);
+    if (nodes.length == 0) {
+      return lines;
+    }
+    JavacASTSource text = JavacASTSource.read(source);
+    for (int node : nodes) {
+      int position = Math.max(snapshot.getStartPosition(node), 0);
+      int line = text.getLine(position);
+      lines.add(source + ":" + (line + 1) + ":" + (position - text.getLineStart(line) + 1) + ": "
+          + snapshot.toString(node));
+    }
+    return lines;
+  }
+
+  public static void main(String[] args) {
+    JavacASTParser.Mode mode = JavacASTParser.Mode.ANALYZE;
+    JavacASTCache cache = null;
+    List<String> options = new ArrayList<>();
+    JavacASTFilter.Builder filter = new JavacASTFilter.Builder();
+    boolean shared = false;
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--parse-only")) {
+        mode = JavacASTParser.Mode.PARSE_ONLY;
+      } else if (args[i].equals("--cache")) {
+        cache = new JavacASTCache(JavacASTCache.defaultDirectory());
+      } else if (args[i].equals("--shared")) {
+        shared = true;
+      } else if (JavacASTParser.PATH_OPTIONS.contains(args[i]) && i < args.length - 1) {
+        options.add(args[i]);
+        options.add(args[++i]);
+      } else if (JavacASTFilter.OPTIONS.contains(args[i])) {
+        i = filter.parse(args, i);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.size() < 2) {
+      System.err.println("Usage: JavacASTQuery [--parse-only] [--cache] [--shared] "
+          + "[-sourcepath|-classpath|--module-path <path>]... [<filter options>] "
+          + "<selector> <file-or-directory>...");
+      System.exit(1);
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try (JavacASTBatch batch = new JavacASTBatch(mode, options, filter.build(), cache)) {
+      JavacASTQuery query = parse(paths.get(0));
+      List<Path> sources = JavacASTBatch.collectSources(paths.subList(1, paths.size()));
+      List<Future<List<String>>> results = new ArrayList<>();
+      if (shared && !sources.isEmpty()) {
+        List<JavacASTSnapshot> snapshots =
+            batch.loadShared(sources, new JavacASTStats(JavacASTBatch.commonDirectory(sources)));
+        for (int i = 0; i < sources.size(); i++) {
+          JavacASTSnapshot snapshot = snapshots.get(i);
+          Path source = sources.get(i);
+          results.add(executor.submit(() -> query.run(snapshot, source)));
+        }
+      } else {
+        for (Path source : sources) {
+          results.add(executor.submit(
+              () -> query.run(batch.load(source, new JavacASTStats(source)), source)));
+        }
+      }
+      int matches = 0;
+      for (int i = 0; i < sources.size(); i++) {
+        try {
+          List<String> lines = results.get(i).get();
+          lines.forEach(System.out::println);
+          matches += lines.size();
+        } catch (ExecutionException e) {
+          System.err.println(sources.get(i) + ": " + e.getCause());
+        }
+      }
+      System.err.println(matches + " matches in " + sources.size() + " files");
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeParameterTree;
+import com.sun.source.tree.VariableTree;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cross-reference of the symbols in the snapshots of one compilation: the node that declares each
+ * symbol, when one of the files does, and the nodes that refer to it.
+ *
+ * <p>Symbol ids are assigned while the files are visited, so this is built from the snapshots
+ * alone, cached ones included. Postings are kept in compressed rows: the references to symbol
+ * {@code s} are entries {@code [offsets[s], offsets[s + 1])} of the file and node arrays, in file
+ * order then pre-order, so both lookups are a few array reads.
+ */
+public class JavacASTReferences {
+
+  private static final Tree.Kind[] KINDS = Tree.Kind.values();
+  private static final boolean[] DECLARATIONS = new boolean[KINDS.length];
+  private static final boolean[] REFERENCES = new boolean[KINDS.length];
+
+  static {
+    for (Tree.Kind kind : KINDS) {
+      Class<?> type = kind.asInterface();
+      DECLARATIONS[kind.ordinal()] = type == ClassTree.class || type == MethodTree.class
+          || type == VariableTree.class || type == TypeParameterTree.class;
+      // A method invocation, type application or annotation has the element of its name too,
+      // which is already the reference.
+      REFERENCES[kind.ordinal()] = type == IdentifierTree.class || type == MemberSelectTree.class
+          || type == MemberReferenceTree.class || type == NewClassTree.class;
+    }
+  }
+
+  private final List<JavacASTSnapshot> snapshots;
+  private final int[] declarationFiles;
+  private final int[] declarationNodes;
+  private final int[] offsets;
+  private final int[] referenceFiles;
+  private final int[] referenceNodes;
+
+  private JavacASTReferences(List<JavacASTSnapshot> snapshots, int[] declarationFiles,
+      int[] declarationNodes, int[] offsets, int[] referenceFiles, int[] referenceNodes) {
+    this.snapshots = snapshots;
+    this.declarationFiles = declarationFiles;
+    this.declarationNodes = declarationNodes;
+    this.offsets = offsets;
+    this.referenceFiles = referenceFiles;
+    this.referenceNodes = referenceNodes;
+  }
+
+  /** Returns whether nodes of a kind are given the id of their symbol. */
+  static boolean isIndexed(Tree.Kind kind) {
+    return DECLARATIONS[kind.ordinal()] || REFERENCES[kind.ordinal()];
+  }
+
+  static JavacASTReferences of(JavacASTSnapshot snapshot) {
+    return of(Collections.singletonList(snapshot));
+  }
+
+  /**
+   * Indexes snapshots that share symbol ids, such as those of a shared compilation; files are
+   * then numbered by their position in {@code snapshots}.
+   */
+  static JavacASTReferences of(List<JavacASTSnapshot> snapshots) {
+    int symbols = 0;
+    for (JavacASTSnapshot snapshot : snapshots) {
+      for (int node = 0; node < snapshot.size(); node++) {
+        symbols = Math.max(symbols, snapshot.getSymbol(node) + 1);
+      }
+    }
+    int[] declarationFiles = new int[symbols];
+    int[] declarationNodes = new int[symbols];
+    Arrays.fill(declarationFiles, JavacASTSnapshot.NONE);
+    Arrays.fill(declarationNodes, JavacASTSnapshot.NONE);
+    int[] offsets = new int[symbols + 1];
+    for (int file = 0; file < snapshots.size(); file++) {
+      JavacASTSnapshot snapshot = snapshots.get(file);
+      for (int node = 0; node < snapshot.size(); node++) {
+        int symbol = snapshot.getSymbol(node);
+        if (symbol == JavacASTSnapshot.NONE) {
+          continue;
+        }
+        if (REFERENCES[snapshot.getKind(node).ordinal()]) {
+          offsets[symbol + 1]++;
+        } else if (declarationNodes[symbol] == JavacASTSnapshot.NONE) {
+          declarationFiles[symbol] = file;
+          declarationNodes[symbol] = node;
+        }
+      }
+    }
+    for (int symbol = 0; symbol < symbols; symbol++) {
+      offsets[symbol + 1] += offsets[symbol];
+    }
+    int[] referenceFiles = new int[offsets[symbols]];
+    int[] referenceNodes = new int[offsets[symbols]];
+    int[] next = Arrays.copyOf(offsets, symbols);
+    for (int file = 0; file < snapshots.size(); file++) {
+      JavacASTSnapshot snapshot = snapshots.get(file);
+      for (int node = 0; node < snapshot.size(); node++) {
+        int symbol = snapshot.getSymbol(node);
+        if (symbol != JavacASTSnapshot.NONE && REFERENCES[snapshot.getKind(node).ordinal()]) {
+          referenceFiles[next[symbol]] = file;
+          referenceNodes[next[symbol]++] = node;
+        }
+      }
+    }
+    return new JavacASTReferences(snapshots, declarationFiles, declarationNodes, offsets,
+        referenceFiles, referenceNodes);
+  }
+
+  int getSymbolCount() {
+    return declarationNodes.length;
+  }
+
+  /** Returns the symbol a node declares or refers to, or {@link JavacASTSnapshot#NONE}. */
+  int getSymbol(int file, int node) {
+    return snapshots.get(file).getSymbol(node);
+  }
+
+  /** Returns the file that declares a symbol, or {@link JavacASTSnapshot#NONE} if none does. */
+  int getDeclarationFile(int symbol) {
+    return declarationFiles[symbol];
+  }
+
+  /** Returns the node that declares a symbol, or {@link JavacASTSnapshot#NONE} if none does. */
+  int getDeclarationNode(int symbol) {
+    return declarationNodes[symbol];
+  }
+
+  int getReferenceCount(int symbol) {
+    return offsets[symbol + 1] - offsets[symbol];
+  }
+
+  /** Returns the file of the {@code i}th reference to a symbol. */
+  int getReferenceFile(int symbol, int i) {
+    return referenceFiles[offsets[symbol] + i];
+  }
+
+  /** Returns the node of the {@code i}th reference to a symbol. */
+  int getReferenceNode(int symbol, int i) {
+    return referenceNodes[offsets[symbol] + i];
+  }
+
+  /** Returns the nodes of the file that refer to a symbol, in pre-order. */
+  int[] getReferences(int symbol, int file) {
+    // References are sorted by file, so the file's are one run.
+    int from = lowerBound(offsets[symbol], offsets[symbol + 1], file);
+    int to = lowerBound(from, offsets[symbol + 1], file + 1);
+    return Arrays.copyOfRange(referenceNodes, from, to);
+  }
+
+  private int lowerBound(int from, int to, int file) {
+    while (from < to) {
+      int mid = (from + to) >>> 1;
+      if (referenceFiles[mid] < file) {
+        from = mid + 1;
+      } else {
+        to = mid;
+      }
+    }
+    return from;
+  }
+
+  /**
+   * Returns the symbol of the innermost node at a position that has one, such as the method
+   * whose name is at the position, or {@link JavacASTSnapshot#NONE}.
+   */
+  int getSymbolAt(int file, JavacASTIntervalIndex index, int position) {
+    JavacASTSnapshot snapshot = snapshots.get(file);
+    for (int node = index.nodeAt(position); node != JavacASTSnapshot.NONE;
+        node = snapshot.getParent(node)) {
+      if (snapshot.getSymbol(node) != JavacASTSnapshot.NONE) {
+        return snapshot.getSymbol(node);
+      }
+    }
+    return JavacASTSnapshot.NONE;
+  }
+
+  /** Formats a node as {@code file:line:column: node}. */
+  private static String format(Path file, JavacASTSource source, JavacASTSnapshot snapshot,
+      int node) {
+    int position = Math.max(snapshot.getStartPosition(node), 0);
+    int line = source.getLine(position);
+    return file + ":" + (line + 1) + ":" + (position - source.getLineStart(line) + 1) + ": "
+        + snapshot.toString(node);
+  }
+
+  public static void main(String[] args) {
+    List<String> options = new ArrayList<>();
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (JavacASTParser.PATH_OPTIONS.contains(args[i]) && i < args.length - 1) {
+        options.add(args[i]);
+        options.add(args[++i]);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    int column = paths.isEmpty() ? -1 : paths.get(0).lastIndexOf(':');
+    int line = column <= 0 ? -1 : paths.get(0).lastIndexOf(':', column - 1);
+    if (line <= 0) {
+      System.err.println("Usage: JavacASTReferences "
+          + "[-sourcepath|-classpath|--module-path <path>]... <file>:<line>:<column> "
+          + "[<file-or-directory>...]");
+      System.exit(1);
+    }
+    String target = paths.get(0);
+    try (JavacASTParser parser = new JavacASTParser(JavacASTParser.Mode.ANALYZE, options, null)) {
+      Path file = Paths.get(target.substring(0, line));
+      List<Path> sources = JavacASTBatch.collectSources(paths.subList(1, paths.size()));
+      int fileIndex = JavacASTSnapshot.NONE;
+      for (int i = 0; i < sources.size() && fileIndex == JavacASTSnapshot.NONE; i++) {
+        if (Files.isSameFile(sources.get(i), file)) {
+          fileIndex = i;
+        }
+      }
+      if (fileIndex == JavacASTSnapshot.NONE) {
+        fileIndex = sources.size();
+        sources.add(file);
+      }
+      long start = System.nanoTime();
+      List<JavacASTSnapshot> snapshots =
+          parser.snapshot(sources, new JavacASTStats(JavacASTBatch.commonDirectory(sources)));
+      JavacASTReferences references = of(snapshots);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      Map<Integer, JavacASTSource> texts = new HashMap<>();
+      JavacASTSource text = JavacASTSource.read(file);
+      texts.put(fileIndex, text);
+      int position = text.getLineStart(Integer.parseInt(target.substring(line + 1, column)) - 1)
+          + Integer.parseInt(target.substring(column + 1)) - 1;
+      JavacASTIntervalIndex index = JavacASTIntervalIndex.of(snapshots.get(fileIndex));
+      long lookup = System.nanoTime();
+      int symbol = references.getSymbolAt(fileIndex, index, position);
+      double micros = (System.nanoTime() - lookup) / 1e3;
+      if (symbol == JavacASTSnapshot.NONE) {
+        System.err.println("No symbol at " + target);
+        System.exit(1);
+      }
+      int declaration = references.getDeclarationNode(symbol);
+      if (declaration != JavacASTSnapshot.NONE) {
+        int declarationFile = references.getDeclarationFile(symbol);
+        JavacASTSource source = texts.computeIfAbsent(declarationFile,
+            f -> read(sources.get(f)));
+        System.out.println(format(sources.get(declarationFile), source,
+            snapshots.get(declarationFile), declaration) + " (declaration)");
+      }
+      for (int i = 0; i < references.getReferenceCount(symbol); i++) {
+        int referenceFile = references.getReferenceFile(symbol, i);
+        JavacASTSource source = texts.computeIfAbsent(referenceFile, f -> read(sources.get(f)));
+        System.out.println(format(sources.get(referenceFile), source,
+            snapshots.get(referenceFile), references.getReferenceNode(symbol, i)));
+      }
+      System.err.printf("%s%d references, looked up in %.1f us; %d files and %d symbols "
+              + "indexed in %.2fs%n",
+          declaration == JavacASTSnapshot.NONE ? "declared outside the files, " : "",
+          references.getReferenceCount(symbol), micros, sources.size(),
+          references.getSymbolCount(), seconds);
+    } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+      System.err.println(e);
+      System.exit(1);
+    }
+  }
+
+  private static JavacASTSource read(Path file) {
+    try {
+      return JavacASTSource.read(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.Tree;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the nodes whose kind, name or type contains some text, ignoring case, for the viewer's
+ * search box.
+ *
+ * <p>The index is built once over the distinct names and types of a {@link JavacASTIndex}, which
+ * are far fewer than the nodes. Text of three characters or more is looked up by its trigrams,
+ * and only the values that have them all are compared; shorter text is compared with every value.
+ */
+public class JavacASTSearch {
+
+  private static final Tree.Kind[] KINDS = Tree.Kind.values();
+
+  private final JavacASTIndex index;
+  /** The distinct names and types, as found in the snapshot. */
+  private final String[] values;
+  private final String[] lowerCase;
+  /** The values whose lower case has each trigram, in increasing order. */
+  private final Map<Long, int[]> trigrams;
+
+  private JavacASTSearch(JavacASTIndex index, String[] values, String[] lowerCase,
+      Map<Long, int[]> trigrams) {
+    this.index = index;
+    this.values = values;
+    this.lowerCase = lowerCase;
+    this.trigrams = trigrams;
+  }
+
+  static JavacASTSearch of(JavacASTIndex index) {
+    Set<String> distinct = new LinkedHashSet<>();
+    index.getValues(JavacASTIndex.Field.NAME).forEach(distinct::add);
+    index.getValues(JavacASTIndex.Field.TYPE).forEach(distinct::add);
+    String[] values = distinct.toArray(new String[0]);
+    String[] lowerCase = new String[values.length];
+    for (int i = 0; i < values.length; i++) {
+      lowerCase[i] = values[i].toLowerCase(Locale.ROOT);
+    }
+    // Two passes, as for the postings of JavacASTIndex: count, then fill.
+    Map<Long, int[]> counts = new HashMap<>();
+    for (int value = 0; value < values.length; value++) {
+      String string = lowerCase[value];
+      for (int i = 0; i + 3 <= string.length(); i++) {
+        int[] count = counts.computeIfAbsent(trigram(string, i), t -> new int[] {0, -1});
+        // A value is counted once however often it has the trigram.
+        if (count[1] != value) {
+          count[0]++;
+          count[1] = value;
+        }
+      }
+    }
+    Map<Long, int[]> trigrams = new HashMap<>(counts.size() * 2);
+    counts.forEach((trigram, count) -> {
+      trigrams.put(trigram, new int[count[0]]);
+      count[0] = 0;
+      count[1] = -1;
+    });
+    for (int value = 0; value < values.length; value++) {
+      String string = lowerCase[value];
+      for (int i = 0; i + 3 <= string.length(); i++) {
+        long trigram = trigram(string, i);
+        int[] count = counts.get(trigram);
+        if (count[1] != value) {
+          trigrams.get(trigram)[count[0]++] = value;
+          count[1] = value;
+        }
+      }
+    }
+    return new JavacASTSearch(index, values, lowerCase, trigrams);
+  }
+
+  private static long trigram(String string, int i) {
+    return (long) string.charAt(i) << 32 | (long) string.charAt(i + 1) << 16
+        | string.charAt(i + 2);
+  }
+
+  /** Returns the ids of the nodes that match {@code text}, in pre-order. */
+  BitSet find(String text) {
+    String query = text.toLowerCase(Locale.ROOT);
+    BitSet nodes = new BitSet(index.size());
+    if (query.isEmpty()) {
+      return nodes;
+    }
+    for (Tree.Kind kind : KINDS) {
+      if (index.hasKind(kind) && kind.toString().toLowerCase(Locale.ROOT).contains(query)) {
+        nodes.or(index.getNodes(kind));
+      }
+    }
+    for (int value : findValues(query)) {
+      set(nodes, index.getNodes(JavacASTIndex.Field.NAME, values[value]));
+      set(nodes, index.getNodes(JavacASTIndex.Field.TYPE, values[value]));
+    }
+    return nodes;
+  }
+
+  private List<Integer> findValues(String query) {
+    List<Integer> found = new ArrayList<>();
+    if (query.length() < 3) {
+      // No trigram to look up, but the distinct values are few enough to compare each.
+      for (int value = 0; value < lowerCase.length; value++) {
+        if (lowerCase[value].contains(query)) {
+          found.add(value);
+        }
+      }
+      return found;
+    }
+    int[][] postings = new int[query.length() - 2][];
+    for (int i = 0; i < postings.length; i++) {
+      postings[i] = trigrams.get(trigram(query, i));
+      if (postings[i] == null) {
+        return found;
+      }
+    }
+    Arrays.sort(postings, (a, b) -> Integer.compare(a.length, b.length));
+    int[] candidates = postings[0];
+    for (int i = 1; i < postings.length && candidates.length > 0; i++) {
+      candidates = intersect(candidates, postings[i]);
+    }
+    // Having every trigram does not mean having them in order.
+    for (int value : candidates) {
+      if (lowerCase[value].contains(query)) {
+        found.add(value);
+      }
+    }
+    return found;
+  }
+
+  private static int[] intersect(int[] a, int[] b) {
+    int[] result = new int[Math.min(a.length, b.length)];
+    int size = 0;
+    for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[size++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  private static void set(BitSet bits, int[] nodes) {
+    if (nodes != null) {
+      for (int node : nodes) {
+        bits.set(node);
+      }
+    }
+  }
+}
@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Immutable copy of a visited tree that holds no javac objects, so the compiler can be released
+ * once it is built and the snapshot can be shared between threads.
+ *
+ * <p>Nodes are ids in {@code [0, size())} assigned in pre-order, so the root is 0 and every node
+ * comes before its descendants. Structure is kept in parent, first-child and next-sibling arrays,
+ * and names, elements and types are indices into a string table shared by all the nodes.
+ *
+ * <p>Declarations and references that were attributed also have the id of their symbol, which
+ * {@link JavacASTReferences} indexes. The snapshots visited with one {@link Builder#Builder(Map)
+ * symbol table}, such as those of a shared compilation, agree on these ids.
+ */
+public class JavacASTSnapshot {
+
+  static final int NONE = -1;
+  static final int FORMAT_VERSION = 2;
+
+  private static final int MAGIC = 0x4A415354;
+
+  private static final Tree.Kind[] KINDS = Tree.Kind.values();
+
+  private final short[] kinds;
+  private final int[] startPositions;
+  private final int[] endPositions;
+  private final int[] parents;
+  private final int[] firstChildren;
+  private final int[] nextSiblings;
+  private final int[] names;
+  private final int[] elements;
+  private final int[] types;
+  private final int[] symbols;
+  private final String[] strings;
+
+  JavacASTSnapshot(short[] kinds, int[] startPositions, int[] endPositions, int[] parents,
+      int[] firstChildren, int[] nextSiblings, int[] names, int[] elements, int[] types,
+      int[] symbols, String[] strings) {
+    this.kinds = kinds;
+    this.startPositions = startPositions;
+    this.endPositions = endPositions;
+    this.parents = parents;
+    this.firstChildren = firstChildren;
+    this.nextSiblings = nextSiblings;
+    this.names = names;
+    this.elements = elements;
+    this.types = types;
+    this.symbols = symbols;
+    this.strings = strings;
+  }
+
+  static JavacASTSnapshot of(CompilationUnitTree tree, Trees trees, boolean attribute) {
+    Builder builder = new Builder();
+    JavacASTVisitor.visit(tree, trees, attribute, builder);
+    return builder.build();
+  }
+
+  /**
+   * Copies a node tree in pre-order, adding each node to {@code nodes} so that its index is its
+   * id. Lazy nodes are not attributed by the copy.
+   */
+  static JavacASTSnapshot of(JavacASTNode root, List<JavacASTNode> nodes) {
+    Builder builder = new Builder();
+    copy(root, NONE, builder, nodes);
+    return builder.build();
+  }
+
+  private static void copy(JavacASTNode node, int parent, Builder builder,
+      List<JavacASTNode> nodes) {
+    boolean attributed = node.isAttributed();
+    int id = builder.add(parent, node.getTree().getKind(), node.getName(),
+        attributed ? node.getElement().orElse(null) : null,
+        attributed ? node.getTypeMirror().orElse(null) : null, node.getStartPosition(),
+        node.getEndPosition());
+    nodes.add(node);
+    node.getChildren().forEach(child -> copy(child, id, builder, nodes));
+  }
+
+  /**
+   * Reads a snapshot written by {@link #write(WritableByteChannel)}, typically from a
+   * memory-mapped file.
+   */
+  static JavacASTSnapshot read(ByteBuffer buffer) throws IOException {
+    try {
+      return readChecked(buffer);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated snapshot", e);
+    }
+  }
+
+  private static JavacASTSnapshot readChecked(ByteBuffer buffer) throws IOException {
+    if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+      throw new IOException("Not a snapshot");
+    }
+    int size = buffer.getInt();
+    int stringCount = buffer.getInt();
+    // Checked before allocating, so a corrupt header cannot ask for gigabytes.
+    if (size < 0 || stringCount < 0 || 38L * size + 4L * stringCount > buffer.remaining()) {
+      throw new IOException("Truncated snapshot of " + size + " nodes");
+    }
+    int[][] arrays = new int[9][size];
+    for (int[] array : arrays) {
+      buffer.asIntBuffer().get(array);
+      buffer.position(buffer.position() + 4 * size);
+    }
+    short[] kinds = new short[size];
+    buffer.asShortBuffer().get(kinds);
+    buffer.position(buffer.position() + 2 * size);
+    for (short kind : kinds) {
+      if (kind < 0 || kind >= KINDS.length) {
+        throw new IOException("Unknown kind " + kind);
+      }
+    }
+    String[] strings = new String[stringCount];
+    for (int i = 0; i < stringCount; i++) {
+      int length = buffer.getInt();
+      if (length < 0 || length > buffer.remaining()) {
+        throw new IOException("Truncated snapshot string of " + length + " bytes");
+      }
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      strings[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return new JavacASTSnapshot(kinds, arrays[0], arrays[1], arrays[2], arrays[3], arrays[4],
+        arrays[5], arrays[6], arrays[7], arrays[8], strings);
+  }
+
+  void write(WritableByteChannel channel) throws IOException {
+    int size = size();
+    byte[][] encoded = new byte[strings.length][];
+    long length = 16 + 38L * size;
+    for (int i = 0; i < strings.length; i++) {
+      encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+      length += 4 + encoded[i].length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length));
+    buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(size).putInt(strings.length);
+    for (int[] array : new int[][] {startPositions, endPositions, parents, firstChildren,
+        nextSiblings, names, elements, types, symbols}) {
+      buffer.asIntBuffer().put(array);
+      buffer.position(buffer.position() + 4 * size);
+    }
+    buffer.asShortBuffer().put(kinds);
+    buffer.position(buffer.position() + 2 * size);
+    for (byte[] bytes : encoded) {
+      buffer.putInt(bytes.length).put(bytes);
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  int size() {
+    return kinds.length;
+  }
+
+  Tree.Kind getKind(int node) {
+    return KINDS[kinds[node]];
+  }
+
+  int getStartPosition(int node) {
+    return startPositions[node];
+  }
+
+  int getEndPosition(int node) {
+    return endPositions[node];
+  }
+
+  int getParent(int node) {
+    return parents[node];
+  }
+
+  int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  int[] getChildren(int node) {
+    int count = 0;
+    for (int c = firstChildren[node]; c != NONE; c = nextSiblings[c]) {
+      count++;
+    }
+    int[] children = new int[count];
+    for (int c = firstChildren[node], i = 0; c != NONE; c = nextSiblings[c]) {
+      children[i++] = c;
+    }
+    return children;
+  }
+
+  String getName(int node) {
+    return getString(names[node]);
+  }
+
+  String getElement(int node) {
+    return getString(elements[node]);
+  }
+
+  String getType(int node) {
+    return getString(types[node]);
+  }
+
+  /** Returns the symbol a declaration or reference is bound to, or {@link #NONE}. */
+  int getSymbol(int node) {
+    return symbols[node];
+  }
+
+  private String getString(int index) {
+    return index == NONE ? null : strings[index];
+  }
+
+  String toString(int node) {
+    StringBuilder sb = new StringBuilder(getKind(node).toString());
+    String name = getName(node);
+    if (name != null && !name.isEmpty()) {
+      sb.append(" (").append(name).append(")");
+    }
+    return sb.toString();
+  }
+
+  static class Builder implements JavacASTBuilder<Integer> {
+
+    private final Map<Element, Integer> symbolIds;
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private short[] kinds = new short[1024];
+    private int[] startPositions = new int[1024];
+    private int[] endPositions = new int[1024];
+    private int[] parents = new int[1024];
+    private int[] firstChildren = new int[1024];
+    private int[] nextSiblings = new int[1024];
+    private int[] lastChildren = new int[1024];
+    private int[] names = new int[1024];
+    private int[] elements = new int[1024];
+    private int[] types = new int[1024];
+    private int[] symbols = new int[1024];
+    private int size;
+
+    Builder() {
+      this(new HashMap<>());
+    }
+
+    /**
+     * Creates a builder that numbers symbols in {@code symbolIds}, which other builders of the
+     * same compilation may share.
+     */
+    Builder(Map<Element, Integer> symbolIds) {
+      this.symbolIds = symbolIds;
+    }
+
+    @Override
+    public Integer add(Integer parent, TreePath path, Element element, TypeMirror typeMirror,
+        long startPosition, long endPosition) {
+      Tree tree = path.getLeaf();
+      return add(parent == null ? NONE : parent, tree.getKind(),
+          element != null ? element.getSimpleName() : JavacASTNode.getName(tree), element,
+          typeMirror, startPosition, endPosition);
+    }
+
+    int add(int parent, Tree.Kind kind, CharSequence name, Object element, Object typeMirror,
+        long startPosition, long endPosition) {
+      if (size == kinds.length) {
+        grow();
+      }
+      int node = size++;
+      kinds[node] = (short) kind.ordinal();
+      startPositions[node] = (int) startPosition;
+      endPositions[node] = (int) endPosition;
+      parents[node] = parent;
+      firstChildren[node] = NONE;
+      nextSiblings[node] = NONE;
+      lastChildren[node] = NONE;
+      names[node] = intern(name);
+      elements[node] = intern(element);
+      types[node] = intern(typeMirror);
+      symbols[node] = symbol(kind, element);
+      if (parent != NONE) {
+        if (lastChildren[parent] == NONE) {
+          firstChildren[parent] = node;
+        } else {
+          nextSiblings[lastChildren[parent]] = node;
+        }
+        lastChildren[parent] = node;
+      }
+      return node;
+    }
+
+    private int intern(Object value) {
+      if (value == null) {
+        return NONE;
+      }
+      return stringIndex.computeIfAbsent(value.toString(), string -> {
+        strings.add(string);
+        return strings.size() - 1;
+      });
+    }
+
+    private int symbol(Tree.Kind kind, Object element) {
+      if (!(element instanceof Element) || !JavacASTReferences.isIndexed(kind)) {
+        return NONE;
+      }
+      Integer id = symbolIds.get(element);
+      if (id == null) {
+        id = symbolIds.size();
+        symbolIds.put((Element) element, id);
+      }
+      return id;
+    }
+
+    private void grow() {
+      int capacity = kinds.length * 2;
+      kinds = Arrays.copyOf(kinds, capacity);
+      startPositions = Arrays.copyOf(startPositions, capacity);
+      endPositions = Arrays.copyOf(endPositions, capacity);
+      parents = Arrays.copyOf(parents, capacity);
+      firstChildren = Arrays.copyOf(firstChildren, capacity);
+      nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+      lastChildren = Arrays.copyOf(lastChildren, capacity);
+      names = Arrays.copyOf(names, capacity);
+      elements = Arrays.copyOf(elements, capacity);
+      types = Arrays.copyOf(types, capacity);
+      symbols = Arrays.copyOf(symbols, capacity);
+    }
+
+    JavacASTSnapshot build() {
+      return new JavacASTSnapshot(Arrays.copyOf(kinds, size), Arrays.copyOf(startPositions, size),
+          Arrays.copyOf(endPositions, size), Arrays.copyOf(parents, size),
+          Arrays.copyOf(firstChildren, size), Arrays.copyOf(nextSiblings, size),
+          Arrays.copyOf(names, size), Arrays.copyOf(elements, size), Arrays.copyOf(types, size),
+          Arrays.copyOf(symbols, size), strings.toArray(new String[0]));
+    }
+  }
+}
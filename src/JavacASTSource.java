@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A UTF-8 source file kept as its bytes and decoded only where it is read, which takes half the
+ * heap of a string for ASCII text. javac positions count chars, not bytes, so one scan of the
+ * bytes records the byte and char offset of every line start. In a line of ASCII a position is
+ * then a byte offset; other lines are decoded whole, with the same replacement of malformed bytes
+ * as javac's decoder, so that positions agree with javac's even then.
+ *
+ * <p>The bytes are read rather than mapped, since the file may be rewritten while it is shown.
+ */
+public class JavacASTSource implements CharSequence {
+
+  private final ByteBuffer bytes;
+  private final int length;
+  private final int[] lineBytes;
+  private final int[] lineChars;
+  private final BitSet decodedLines;
+
+  private JavacASTSource(ByteBuffer bytes, int length, int[] lineBytes, int[] lineChars,
+      BitSet decodedLines) {
+    this.bytes = bytes;
+    this.length = length;
+    this.lineBytes = lineBytes;
+    this.lineChars = lineChars;
+    this.decodedLines = decodedLines;
+  }
+
+  static JavacASTSource read(Path file) throws IOException {
+    return of(ByteBuffer.wrap(Files.readAllBytes(file)));
+  }
+
+  /** Indexes {@code bytes}, which must not change afterwards. */
+  static JavacASTSource of(ByteBuffer bytes) {
+    int[] lineBytes = new int[16];
+    int[] lineChars = new int[16];
+    BitSet decodedLines = new BitSet();
+    int lines = 1;
+    int chars = 0;
+    boolean ascii = true;
+    for (int i = 0; i <= bytes.limit(); i++) {
+      if (i < bytes.limit() && bytes.get(i) != '\n') {
+        ascii &= bytes.get(i) >= 0;
+        continue;
+      }
+      // A line ends after its '\n', which a malformed sequence never swallows, so decoding it
+      // alone gives the chars decoding the whole file would.
+      int start = lineBytes[lines - 1];
+      int end = Math.min(i + 1, bytes.limit());
+      if (ascii) {
+        chars += end - start;
+      } else {
+        chars += decode(bytes, start, end).length();
+        decodedLines.set(lines - 1);
+      }
+      if (i == bytes.limit()) {
+        break;
+      }
+      if (lines == lineBytes.length) {
+        lineBytes = Arrays.copyOf(lineBytes, lines * 2);
+        lineChars = Arrays.copyOf(lineChars, lines * 2);
+      }
+      lineBytes[lines] = i + 1;
+      lineChars[lines++] = chars;
+      ascii = true;
+    }
+    return new JavacASTSource(bytes, chars, Arrays.copyOf(lineBytes, lines),
+        Arrays.copyOf(lineChars, lines), decodedLines);
+  }
+
+  /** Decodes the bytes in {@code [from, to)}, replacing malformed input. */
+  private static String decode(ByteBuffer bytes, int from, int to) {
+    ByteBuffer range = bytes.duplicate();
+    range.limit(to).position(from);
+    return StandardCharsets.UTF_8.decode(range).toString();
+  }
+
+  /** Returns the UTF-8 bytes of the file, for reading with absolute gets. */
+  ByteBuffer getBytes() {
+    return bytes.duplicate();
+  }
+
+  int getLineCount() {
+    return lineChars.length;
+  }
+
+  /** Returns the 0-based line of a char position. */
+  int getLine(int position) {
+    int line = Arrays.binarySearch(lineChars, position);
+    return line < 0 ? -line - 2 : line;
+  }
+
+  /** Returns the char position at which a line starts, or the length past the last line. */
+  int getLineStart(int line) {
+    return line < lineChars.length ? lineChars[line] : length;
+  }
+
+  private int getLineEndByte(int line) {
+    return line + 1 < lineBytes.length ? lineBytes[line + 1] : bytes.limit();
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return subSequence(index, index + 1).charAt(0);
+  }
+
+  /** Decodes the chars in {@code [start, end)}. */
+  @Override
+  public String subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException(start + ", " + end + " of " + length);
+    }
+    if (start == end) {
+      return "";
+    }
+    int first = getLine(start);
+    int last = getLine(end - 1);
+    int decoded = decodedLines.nextSetBit(first);
+    if (decoded < 0 || decoded > last) {
+      return decode(bytes, lineBytes[first] + start - lineChars[first],
+          lineBytes[last] + end - lineChars[last]);
+    }
+    String lines = decode(bytes, lineBytes[first], getLineEndByte(last));
+    return lines.substring(start - lineChars[first], end - lineChars[first]);
+  }
+
+  @Override
+  public String toString() {
+    return subSequence(0, length);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.sun.source.tree.Tree;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Times the phases of loading one file and counts what was loaded. Every phase is also reported
+ * as a {@code jast.Phase} Flight Recorder event, and {@link #count(JavacASTSnapshot)} as
+ * {@code jast.File} and {@code jast.NodeKind} events, so a recording of a running viewer or batch
+ * shows where the time goes on a pathological input. On JDKs without {@code jdk.jfr} only the
+ * figures kept here are available.
+ *
+ * <p>Phase times exclude the phases nested in them: javac reads the file inside its parse, and
+ * that read is reported as {@link Phase#READ} only.
+ */
+public class JavacASTStats {
+
+  enum Phase {
+    READ, PARSE, ANALYZE, VISIT, MODEL
+  }
+
+  private static final boolean FLIGHT_RECORDER = isFlightRecorderAvailable();
+  private static final Tree.Kind[] KINDS = Tree.Kind.values();
+
+  private final Path file;
+  private final Consumer<Phase> listener;
+  private final long[] nanos = new long[Phase.values().length];
+  private final int[] kindCounts = new int[KINDS.length];
+  private Timer current;
+  private long sourceBytes;
+  private int nodes;
+  private int maxDepth;
+
+  JavacASTStats(Path file) {
+    this(file, null);
+  }
+
+  /**
+   * Creates stats that tell {@code listener} about each phase as it starts, on the loading thread.
+   * An exception thrown by the listener abandons the load.
+   */
+  JavacASTStats(Path file, Consumer<Phase> listener) {
+    this.file = file;
+    this.listener = listener;
+  }
+
+  private static boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /** Starts timing a phase; phases started before this one is closed are nested in it. */
+  Timer start(Phase phase) {
+    if (listener != null) {
+      listener.accept(phase);
+    }
+    current = new Timer(phase, current);
+    return current;
+  }
+
+  /** Counts the nodes of a loaded file by kind and its depth. */
+  void count(JavacASTSnapshot snapshot) throws IOException {
+    sourceBytes = Files.size(file);
+    nodes = snapshot.size();
+    maxDepth = 0;
+    int[] depths = new int[nodes];
+    for (int node = 0; node < nodes; node++) {
+      kindCounts[snapshot.getKind(node).ordinal()]++;
+      int parent = snapshot.getParent(node);
+      depths[node] = parent == JavacASTSnapshot.NONE ? 0 : depths[parent] + 1;
+      maxDepth = Math.max(maxDepth, depths[node]);
+    }
+    if (FLIGHT_RECORDER) {
+      JavacASTEvents.commitFile(this);
+    }
+  }
+
+  Path getFile() {
+    return file;
+  }
+
+  long getNanos(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  long getSourceBytes() {
+    return sourceBytes;
+  }
+
+  int getNodes() {
+    return nodes;
+  }
+
+  int getMaxDepth() {
+    return maxDepth;
+  }
+
+  int getCount(Tree.Kind kind) {
+    return kindCounts[kind.ordinal()];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Phase phase : Phase.values()) {
+      sb.append(String.format("%-10s %10.2f ms%n", phase.toString().toLowerCase(),
+          getNanos(phase) / 1e6));
+    }
+    sb.append(String.format("%-10s %10d bytes%n", "source", sourceBytes));
+    sb.append(String.format("%-10s %10d%n", "nodes", nodes));
+    sb.append(String.format("%-10s %10d%n", "max depth", maxDepth));
+    List<Tree.Kind> kinds = new ArrayList<>();
+    for (Tree.Kind kind : KINDS) {
+      if (getCount(kind) > 0) {
+        kinds.add(kind);
+      }
+    }
+    kinds.sort(Comparator.comparingInt(this::getCount).reversed());
+    sb.append(String.format("%n"));
+    for (Tree.Kind kind : kinds) {
+      sb.append(String.format("%-28s %8d%n", kind, getCount(kind)));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Measures one phase until it is closed. Timers are try-with-resources resources that the body
+   * never refers to, so their uses suppress javac's {@code try} lint.
+   */
+  class Timer implements AutoCloseable {
+
+    private final Phase phase;
+    private final Timer parent;
+    private final Object event;
+    private final long start;
+    private long nestedNanos;
+
+    private Timer(Phase phase, Timer parent) {
+      this.phase = phase;
+      this.parent = parent;
+      this.event = FLIGHT_RECORDER ? JavacASTEvents.beginPhase(file, phase) : null;
+      this.start = System.nanoTime();
+    }
+
+    @Override
+    public void close() {
+      long elapsed = System.nanoTime() - start;
+      nanos[phase.ordinal()] += elapsed - nestedNanos;
+      if (parent != null) {
+        parent.nestedNanos += elapsed;
+      }
+      current = parent;
+      if (event != null) {
+        JavacASTEvents.commitPhase(event);
+      }
+    }
+  }
+}
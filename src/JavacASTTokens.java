@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The tokens of a source file in parallel arrays of kind, start and end, in the char positions
+ * javac uses.
+ *
+ * <p>The lexer reads the UTF-8 bytes of a {@link JavacASTSource} directly, since every byte that
+ * delimits a Java token is ASCII: other bytes can only be part of an identifier, a literal or a
+ * comment. It is not javac's scanner, whose package is not exported, and it does not translate
+ * Unicode escapes; an unterminated comment or literal runs to the end of the file or line.
+ *
+ * <p>Only reserved keywords are {@link Kind#KEYWORD}s. Contextual keywords such as {@code var},
+ * {@code record}, {@code yield}, {@code sealed}, {@code permits} and {@code non-sealed} are also
+ * valid identifiers, and telling the two apart takes the parser, so they are lexed as
+ * identifiers ({@code non-sealed} as three tokens).
+ */
+public class JavacASTTokens {
+
+  /** The kinds of token, as far as coloring and the token view tell them apart. */
+  enum Kind {
+    KEYWORD, IDENTIFIER, NUMBER, LITERAL, STRING, COMMENT, OPERATOR, ERROR
+  }
+
+  private static final Kind[] KINDS = Kind.values();
+
+  private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("abstract", "assert",
+      "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
+      "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for",
+      "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+      "new", "package", "private", "protected", "public", "return", "short", "static",
+      "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient",
+      "try", "void", "volatile", "while"));
+
+  private static final Set<String> LITERALS =
+      new HashSet<>(Arrays.asList("true", "false", "null"));
+
+  /** Operators of more than one char, longest first so that the longest one matches. */
+  private static final String[] OPERATORS = {">>>=", "<<=", ">>=", ">>>", "...", "->", "::",
+      "++", "--", "&&", "||", "==", "!=", "<=", ">=", "+=", "-=", "*=", "/=", "&=", "|=", "^=",
+      "%=", "<<", ">>"};
+
+  private static final String[] NO_OPERATORS = {};
+
+  private static final String SINGLE_OPERATORS = "(){}[];,.@=><!~?:+-*/&|^%";
+
+  private final byte[] kinds;
+  private final int[] starts;
+  private final int[] ends;
+
+  private JavacASTTokens(byte[] kinds, int[] starts, int[] ends) {
+    this.kinds = kinds;
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+  static JavacASTTokens of(JavacASTSource source) {
+    return new Lexer(source).run();
+  }
+
+  int size() {
+    return kinds.length;
+  }
+
+  Kind getKind(int token) {
+    return KINDS[kinds[token]];
+  }
+
+  int getStart(int token) {
+    return starts[token];
+  }
+
+  int getEnd(int token) {
+    return ends[token];
+  }
+
+  /** Returns the first token that ends after {@code position}, or {@link #size()}. */
+  int indexAt(int position) {
+    return lowerBound(ends, position + 1);
+  }
+
+  /** Returns the first token that starts at or after {@code position}, or {@link #size()}. */
+  int indexFrom(int position) {
+    return lowerBound(starts, position);
+  }
+
+  private static int lowerBound(int[] positions, int position) {
+    int from = 0;
+    int to = positions.length;
+    while (from < to) {
+      int mid = (from + to) >>> 1;
+      if (positions[mid] < position) {
+        from = mid + 1;
+      } else {
+        to = mid;
+      }
+    }
+    return from;
+  }
+
+  /** Scans the bytes once, counting chars as {@link JavacASTSource} does. */
+  private static final class Lexer {
+
+    private final JavacASTSource source;
+    private final ByteBuffer bytes;
+    private final int limit;
+    private byte[] kinds = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private int size;
+    private int offset;
+    private int chars;
+    private int line;
+
+    Lexer(JavacASTSource source) {
+      this.source = source;
+      this.bytes = source.getBytes();
+      this.limit = bytes.limit();
+    }
+
+    JavacASTTokens run() {
+      while (offset < limit) {
+        int c = peek(0);
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+          advance(1);
+          continue;
+        }
+        int start = chars;
+        Kind kind = scan(c);
+        add(kind, start, chars);
+      }
+      return new JavacASTTokens(Arrays.copyOf(kinds, size), Arrays.copyOf(starts, size),
+          Arrays.copyOf(ends, size));
+    }
+
+    /** Scans the token that starts with {@code c} and returns its kind. */
+    private Kind scan(int c) {
+      if (c == '/' && peek(1) == '/') {
+        while (offset < limit && peek(0) != '\n' && peek(0) != '\r') {
+          advance(1);
+        }
+        return Kind.COMMENT;
+      }
+      if (c == '/' && peek(1) == '*') {
+        advance(2);
+        while (offset < limit && !(peek(0) == '*' && peek(1) == '/')) {
+          advance(1);
+        }
+        advance(Math.min(2, limit - offset));
+        return Kind.COMMENT;
+      }
+      if (c == '"' && peek(1) == '"' && peek(2) == '"') {
+        advance(3);
+        while (offset < limit && !(peek(0) == '"' && peek(1) == '"' && peek(2) == '"')) {
+          advance(peek(0) == '\\' ? Math.min(2, limit - offset) : 1);
+        }
+        advance(Math.min(3, limit - offset));
+        return Kind.STRING;
+      }
+      if (c == '"' || c == '\'') {
+        advance(1);
+        while (offset < limit && peek(0) != c && peek(0) != '\n' && peek(0) != '\r') {
+          advance(peek(0) == '\\' && offset + 1 < limit ? 2 : 1);
+        }
+        if (offset < limit && peek(0) == c) {
+          advance(1);
+        }
+        return Kind.STRING;
+      }
+      if (isDigit(c) || c == '.' && isDigit(peek(1))) {
+        scanNumber();
+        return Kind.NUMBER;
+      }
+      if (isIdentifierPart(c) && !isDigit(c)) {
+        int from = offset;
+        while (offset < limit && isIdentifierPart(peek(0))) {
+          advance(1);
+        }
+        // Keywords and literals are short and lower case.
+        String word = offset - from > 12 || c < 'a' || c > 'z' ? "" : ascii(from, offset);
+        return KEYWORDS.contains(word) ? Kind.KEYWORD
+            : LITERALS.contains(word) ? Kind.LITERAL : Kind.IDENTIFIER;
+      }
+      for (String operator : SINGLE_OPERATORS.indexOf(peek(1)) < 0 ? NO_OPERATORS : OPERATORS) {
+        if (matches(operator)) {
+          advance(operator.length());
+          return Kind.OPERATOR;
+        }
+      }
+      advance(1);
+      return SINGLE_OPERATORS.indexOf(c) >= 0 ? Kind.OPERATOR : Kind.ERROR;
+    }
+
+    private void scanNumber() {
+      boolean hex = peek(0) == '0' && (peek(1) == 'x' || peek(1) == 'X');
+      while (offset < limit) {
+        int c = peek(0);
+        if (isDigit(c) || c == '.' || c == '_' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+          advance(1);
+        } else if ((c == '+' || c == '-') && isExponent(peek(-1), hex)) {
+          advance(1);
+        } else {
+          break;
+        }
+      }
+    }
+
+    private static boolean isExponent(int c, boolean hex) {
+      return hex ? c == 'p' || c == 'P' : c == 'e' || c == 'E';
+    }
+
+    private static boolean isDigit(int c) {
+      return c >= '0' && c <= '9';
+    }
+
+    /** Non-ASCII bytes are taken as letters, since outside literals and comments they are. */
+    private static boolean isIdentifierPart(int c) {
+      return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isDigit(c) || c == '_' || c == '$'
+          || c >= 0x80;
+    }
+
+    private boolean matches(String operator) {
+      for (int i = 0; i < operator.length(); i++) {
+        if (peek(i) != operator.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private String ascii(int from, int to) {
+      char[] word = new char[to - from];
+      for (int i = from; i < to; i++) {
+        word[i - from] = (char) (bytes.get(i) & 0xFF);
+      }
+      return new String(word);
+    }
+
+    /** Returns the unsigned byte {@code ahead} bytes from the offset, or -1 past either end. */
+    private int peek(int ahead) {
+      int i = offset + ahead;
+      return i >= 0 && i < limit ? bytes.get(i) & 0xFF : -1;
+    }
+
+    /**
+     * Moves past {@code count} bytes; four-byte sequences count as a surrogate pair. Each line
+     * starts at the position the source gives it, which also counts malformed bytes right.
+     */
+    private void advance(int count) {
+      for (int i = 0; i < count; i++) {
+        int b = bytes.get(offset++);
+        if (b == '\n') {
+          chars = source.getLineStart(++line);
+        } else if ((b & 0xC0) != 0x80) {
+          chars += (b & 0xF8) == 0xF0 ? 2 : 1;
+        }
+      }
+    }
+
+    private void add(Kind kind, int start, int end) {
+      if (size == kinds.length) {
+        kinds = Arrays.copyOf(kinds, size * 2);
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+      }
+      kinds[size] = (byte) kind.ordinal();
+      starts[size] = start;
+      ends[size++] = end;
+    }
+  }
+}
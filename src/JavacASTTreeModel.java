@@ -0,0 +1,430 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+/**
+ * Read-only {@link TreeModel} over a snapshot whose nodes are {@code Integer} keys, so nothing is
+ * allocated for nodes that are never displayed.
+ *
+ * <p>Keys start as the snapshot ids. When the snapshot is replaced through {@link #diff} and
+ * {@link #apply}, the nodes matched with the previous snapshot keep their keys and only the
+ * differences are reported to the listeners, so {@link javax.swing.JTree} keeps the expansion
+ * and selection of unchanged subtrees.
+ *
+ * <p>Children are linked lists in the snapshot. {@link javax.swing.JTree} asks for them in order,
+ * so the model remembers the last child it returned to answer the next index in constant time.
+ */
+public class JavacASTTreeModel implements TreeModel {
+
+  private static final int MAX_ALIGNMENT_CELLS = 1 << 20;
+
+  private final EventListenerList listeners = new EventListenerList();
+  private JavacASTSnapshot snapshot;
+  private int[] keys;
+  private int[] nodes;
+  private int nextKey;
+  private int cursorParent = JavacASTSnapshot.NONE;
+  private int cursorIndex;
+  private int cursorChild;
+  private int countParent = JavacASTSnapshot.NONE;
+  private int count;
+
+  JavacASTTreeModel(JavacASTSnapshot snapshot) {
+    this.snapshot = snapshot;
+    this.nextKey = snapshot.size();
+  }
+
+  JavacASTSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /** Returns the snapshot id of a key, or {@link JavacASTSnapshot#NONE} if it was removed. */
+  int getNode(Object value) {
+    int key = (Integer) value;
+    if (nodes == null) {
+      return key < snapshot.size() ? key : JavacASTSnapshot.NONE;
+    }
+    return key < nodes.length ? nodes[key] : JavacASTSnapshot.NONE;
+  }
+
+  private int getKey(int node) {
+    return keys == null ? node : keys[node];
+  }
+
+  String getText(Object value) {
+    int node = getNode(value);
+    return node == JavacASTSnapshot.NONE ? "" : snapshot.toString(node);
+  }
+
+  TreePath getTreePath(int node) {
+    return getTreePath(snapshot, node, keys);
+  }
+
+  private static TreePath getTreePath(JavacASTSnapshot snapshot, int node, int[] keys) {
+    List<Integer> keysUp = new ArrayList<>();
+    for (int n = node; n != JavacASTSnapshot.NONE; n = snapshot.getParent(n)) {
+      keysUp.add(keys == null ? n : keys[n]);
+    }
+    // new TreePath(Object[]) recurses once per level, so deep paths are extended one at a time.
+    TreePath path = new TreePath(keysUp.get(keysUp.size() - 1));
+    for (int i = keysUp.size() - 2; i >= 0; i--) {
+      path = path.pathByAddingChild(keysUp.get(i));
+    }
+    return path;
+  }
+
+  @Override
+  public Object getRoot() {
+    return snapshot.size() == 0 ? null : getKey(0);
+  }
+
+  @Override
+  public Object getChild(Object parent, int index) {
+    int node = getNode(parent);
+    if (node == JavacASTSnapshot.NONE) {
+      return null;
+    }
+    if (node != cursorParent || index < cursorIndex) {
+      cursorParent = node;
+      cursorIndex = 0;
+      cursorChild = snapshot.getFirstChild(node);
+    }
+    while (cursorIndex < index && cursorChild != JavacASTSnapshot.NONE) {
+      cursorChild = snapshot.getNextSibling(cursorChild);
+      cursorIndex++;
+    }
+    return cursorChild == JavacASTSnapshot.NONE ? null : getKey(cursorChild);
+  }
+
+  @Override
+  public int getChildCount(Object parent) {
+    int node = getNode(parent);
+    if (node == JavacASTSnapshot.NONE) {
+      return 0;
+    }
+    if (node != countParent) {
+      count = 0;
+      for (int c = snapshot.getFirstChild(node); c != JavacASTSnapshot.NONE;
+          c = snapshot.getNextSibling(c)) {
+        count++;
+      }
+      countParent = node;
+    }
+    return count;
+  }
+
+  @Override
+  public boolean isLeaf(Object value) {
+    int node = getNode(value);
+    return node == JavacASTSnapshot.NONE
+        || snapshot.getFirstChild(node) == JavacASTSnapshot.NONE;
+  }
+
+  @Override
+  public int getIndexOfChild(Object parent, Object child) {
+    if (parent == null || child == null) {
+      return -1;
+    }
+    int parentNode = getNode(parent);
+    int node = getNode(child);
+    if (node == JavacASTSnapshot.NONE || snapshot.getParent(node) != parentNode) {
+      return -1;
+    }
+    int index = 0;
+    for (int c = snapshot.getFirstChild(parentNode); c != node; c = snapshot.getNextSibling(c)) {
+      index++;
+    }
+    return index;
+  }
+
+  @Override
+  public void valueForPathChanged(TreePath path, Object newValue) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addTreeModelListener(TreeModelListener listener) {
+    listeners.add(TreeModelListener.class, listener);
+  }
+
+  @Override
+  public void removeTreeModelListener(TreeModelListener listener) {
+    listeners.remove(TreeModelListener.class, listener);
+  }
+
+  /**
+   * Matches {@code next} against the current snapshot without changing the model, so it can run
+   * off the event dispatch thread as long as nothing is applied meanwhile.
+   *
+   * <p>Nodes are matched top-down: the roots match if their kinds do, and the children of two
+   * matched nodes are aligned by kind after trimming their common prefix and suffix.
+   */
+  Update diff(JavacASTSnapshot next) {
+    Update update = new Update(next, nextKey);
+    if (next.size() == 0 || snapshot.size() == 0 || snapshot.getKind(0) != next.getKind(0)) {
+      update.renumber();
+      return update;
+    }
+    update.match(0, 0);
+    if (update.nextKey > 2 * next.size() + 1024) {
+      update.renumber();
+    }
+    return update;
+  }
+
+  /** Replaces the snapshot and notifies the listeners. Must run on the event dispatch thread. */
+  void apply(Update update) {
+    snapshot = update.next;
+    keys = update.keys;
+    nextKey = update.nextKey;
+    nodes = null;
+    if (keys != null) {
+      nodes = new int[nextKey];
+      Arrays.fill(nodes, JavacASTSnapshot.NONE);
+      for (int node = 0; node < keys.length; node++) {
+        nodes[keys[node]] = node;
+      }
+    }
+    cursorParent = JavacASTSnapshot.NONE;
+    countParent = JavacASTSnapshot.NONE;
+    for (Runnable event : update.events) {
+      event.run();
+    }
+  }
+
+  private void fire(TreeModelEvent event, int type) {
+    // Last to first, like DefaultTreeModel.
+    TreeModelListener[] all = listeners.getListeners(TreeModelListener.class);
+    for (int i = all.length - 1; i >= 0; i--) {
+      TreeModelListener listener = all[i];
+      switch (type) {
+        case Update.REMOVED:
+          listener.treeNodesRemoved(event);
+          break;
+        case Update.INSERTED:
+          listener.treeNodesInserted(event);
+          break;
+        case Update.CHANGED:
+          listener.treeNodesChanged(event);
+          break;
+        default:
+          listener.treeStructureChanged(event);
+      }
+    }
+  }
+
+  /** The result of {@link #diff}: the new snapshot, its keys and the events to fire. */
+  class Update {
+
+    static final int REMOVED = 0;
+    static final int INSERTED = 1;
+    static final int CHANGED = 2;
+    static final int STRUCTURE_CHANGED = 3;
+
+    private final JavacASTSnapshot next;
+    private int[] keys;
+    private int nextKey;
+    private final List<Runnable> events = new ArrayList<>();
+
+    private Update(JavacASTSnapshot next, int nextKey) {
+      this.next = next;
+      this.keys = new int[next.size()];
+      this.nextKey = nextKey;
+    }
+
+    private void renumber() {
+      keys = null;
+      nextKey = next.size();
+      events.clear();
+      TreeModelEvent event = new TreeModelEvent(JavacASTTreeModel.this,
+          new Object[] {next.size() == 0 ? null : 0});
+      events.add(() -> fire(event, STRUCTURE_CHANGED));
+    }
+
+    /**
+     * Matches two roots and, depth first, the subtrees of their matched children. The pairs still
+     * to visit are kept on a stack, as nesting is only bounded by the size of the file.
+     */
+    private void match(int oldRoot, int newRoot) {
+      // Each new node is pushed at most once.
+      int[] stack = new int[2 * next.size()];
+      int top = 0;
+      stack[top++] = oldRoot;
+      stack[top++] = newRoot;
+      while (top > 0) {
+        int newNode = stack[--top];
+        int oldNode = stack[--top];
+        int[] oldChildren = snapshot.getChildren(oldNode);
+        int[] newChildren = next.getChildren(newNode);
+        int[] matches = matchChildren(oldNode, newNode, oldChildren, newChildren);
+        // Last child first, so the children are visited in order.
+        for (int i = oldChildren.length - 1; i >= 0; i--) {
+          if (matches[i] != JavacASTSnapshot.NONE) {
+            stack[top++] = oldChildren[i];
+            stack[top++] = newChildren[matches[i]];
+          }
+        }
+      }
+    }
+
+    /**
+     * Gives a matched node the key of its old partner and records the events for its children,
+     * returning the index of the new child each old child matches, or NONE.
+     */
+    private int[] matchChildren(int oldNode, int newNode, int[] oldChildren, int[] newChildren) {
+      keys[newNode] = getKey(oldNode);
+      int[] matches = align(oldChildren, newChildren);
+      boolean[] matched = new boolean[newChildren.length];
+      int removed = 0;
+      int changed = 0;
+      for (int i = 0; i < oldChildren.length; i++) {
+        if (matches[i] == JavacASTSnapshot.NONE) {
+          removed++;
+        } else {
+          matched[matches[i]] = true;
+          if (!Objects.equals(snapshot.getName(oldChildren[i]),
+              next.getName(newChildren[matches[i]]))) {
+            changed++;
+          }
+        }
+      }
+      int inserted = newChildren.length - (oldChildren.length - removed);
+      if (removed > 0) {
+        int[] indices = new int[removed];
+        Object[] values = new Object[removed];
+        for (int i = 0, j = 0; i < oldChildren.length; i++) {
+          if (matches[i] == JavacASTSnapshot.NONE) {
+            indices[j] = i;
+            values[j++] = getKey(oldChildren[i]);
+          }
+        }
+        addEvent(newNode, indices, values, REMOVED);
+      }
+      if (inserted > 0) {
+        int[] indices = new int[inserted];
+        Object[] values = new Object[inserted];
+        for (int i = 0, j = 0; i < newChildren.length; i++) {
+          if (!matched[i]) {
+            assignKeys(newChildren[i]);
+            indices[j] = i;
+            values[j++] = keys[newChildren[i]];
+          }
+        }
+        addEvent(newNode, indices, values, INSERTED);
+      }
+      if (changed > 0) {
+        int[] indices = new int[changed];
+        Object[] values = new Object[changed];
+        for (int i = 0, j = 0; i < oldChildren.length; i++) {
+          if (matches[i] != JavacASTSnapshot.NONE && !Objects.equals(
+              snapshot.getName(oldChildren[i]), next.getName(newChildren[matches[i]]))) {
+            indices[j] = matches[i];
+            values[j++] = getKey(oldChildren[i]);
+          }
+        }
+        Arrays.sort(indices);
+        addEvent(newNode, indices, values, CHANGED);
+      }
+      return matches;
+    }
+
+    private void addEvent(int parent, int[] indices, Object[] values, int type) {
+      TreeModelEvent event = new TreeModelEvent(JavacASTTreeModel.this,
+          getTreePath(next, parent, keys), indices, values);
+      events.add(() -> fire(event, type));
+    }
+
+    /** Gives a new subtree fresh keys in pre-order, following the links rather than a stack. */
+    private void assignKeys(int root) {
+      int node = root;
+      while (true) {
+        keys[node] = nextKey++;
+        if (next.getFirstChild(node) != JavacASTSnapshot.NONE) {
+          node = next.getFirstChild(node);
+          continue;
+        }
+        while (node != root && next.getNextSibling(node) == JavacASTSnapshot.NONE) {
+          node = next.getParent(node);
+        }
+        if (node == root) {
+          return;
+        }
+        node = next.getNextSibling(node);
+      }
+    }
+
+    /** Returns, for each old child, the index of the new child it matches, or NONE. */
+    private int[] align(int[] oldChildren, int[] newChildren) {
+      int[] matches = new int[oldChildren.length];
+      Arrays.fill(matches, JavacASTSnapshot.NONE);
+      int prefix = 0;
+      while (prefix < oldChildren.length && prefix < newChildren.length
+          && sameKind(oldChildren[prefix], newChildren[prefix])) {
+        matches[prefix] = prefix;
+        prefix++;
+      }
+      int suffix = 0;
+      while (suffix < oldChildren.length - prefix && suffix < newChildren.length - prefix
+          && sameKind(oldChildren[oldChildren.length - 1 - suffix],
+              newChildren[newChildren.length - 1 - suffix])) {
+        matches[oldChildren.length - 1 - suffix] = newChildren.length - 1 - suffix;
+        suffix++;
+      }
+      int m = oldChildren.length - prefix - suffix;
+      int n = newChildren.length - prefix - suffix;
+      if (m == 0 || n == 0 || (long) m * n > MAX_ALIGNMENT_CELLS) {
+        return matches;
+      }
+      // Longest common subsequence of kinds over the middle.
+      int[][] lengths = new int[m + 1][n + 1];
+      for (int i = m - 1; i >= 0; i--) {
+        for (int j = n - 1; j >= 0; j--) {
+          lengths[i][j] = sameKind(oldChildren[prefix + i], newChildren[prefix + j])
+              ? lengths[i + 1][j + 1] + 1
+              : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+        }
+      }
+      for (int i = 0, j = 0; i < m && j < n; ) {
+        if (sameKind(oldChildren[prefix + i], newChildren[prefix + j])) {
+          matches[prefix + i] = prefix + j;
+          i++;
+          j++;
+        } else if (lengths[i + 1][j] >= lengths[i][j + 1]) {
+          i++;
+        } else {
+          j++;
+        }
+      }
+      return matches;
+    }
+
+    private boolean sameKind(int oldNode, int newNode) {
+      return snapshot.getKind(oldNode) == next.getKind(newNode);
+    }
+  }
+}
@@ -17,65 +17,837 @@
  * under the License.
  */
 
-import com.sun.source.tree.CompilationUnitTree;
-import com.sun.source.util.JavacTask;
-import com.sun.source.util.Trees;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.Graphics;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.AdjustmentEvent;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import javax.swing.AbstractListModel;
+import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JEditorPane;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
 import javax.swing.JTree;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.event.CaretEvent;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.TreeSelectionEvent;
-import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.PlainView;
+import javax.swing.text.Segment;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 import javax.tools.Diagnostic;
-import javax.tools.JavaCompiler;
-import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
 
 public class JavacASTViewer extends JPanel {
 
+  private static final long serialVersionUID = 1L;
+  private static final int DEFAULT_EXPAND_DEPTH = 2;
+  private static final int MAX_EXPANDED_MATCHES = 100;
+  /** Lines shown around the selected node, and at most in the source pane. */
+  private static final int WINDOW_MARGIN = 200;
+  private static final int MAX_WINDOW_LINES = 2000;
+  private static final int MAX_LISTED_DELETIONS = 100;
+  /** Chars of a token shown in the token list. */
+  private static final int MAX_TOKEN_TEXT = 40;
+  /**
+   * Heap retained per node by a loaded viewer, measured on a generated file of 1.35M nodes: the
+   * snapshot, the indexes and the tree model, or in lazy mode javac's trees and symbols too.
+   */
+  private static final long BYTES_PER_NODE = 80;
+  private static final long BYTES_PER_LAZY_NODE = 300;
+  private static final long BYTES_PER_TOKEN = 9;
+  /** Name of the bound property fired when a load changes {@link #getEstimatedSize()}. */
+  static final String ESTIMATED_SIZE = "estimatedSize";
+  private static final Color INSERTED = new Color(0x2E7D32);
+  private static final Color UPDATED = new Color(0xE65100);
+  private static final Color MOVED = new Color(0x1565C0);
+  private static final Color KEYWORD_COLOR = new Color(0x7B1FA2);
+  private static final Color NUMBER_COLOR = new Color(0x1565C0);
+  private static final Color STRING_COLOR = new Color(0x00796B);
+  private static final Color COMMENT_COLOR = new Color(0x757575);
+  private static final Color ERROR_COLOR = new Color(0xC62828);
+  private static final Highlighter.HighlightPainter SOURCE_HIGHLIGHT =
+      new DefaultHighlighter.DefaultHighlightPainter(new Color(0xC8DCFF));
+
   private final JTree tree;
-  private final JEditorPane sourcePane;
+  private JavacASTTreeModel treeModel;
+  private JavacASTIntervalIndex intervalIndex;
+  private final JTextArea sourcePane;
+  private final JScrollPane sourceScrollPane;
+  private final JTextArea lineNumbers;
+  private JavacASTSource source;
+  private JavacASTTokens tokens;
+  private final JList<String> tokenList;
+  private boolean syncingTokens;
+  private int windowFirstLine;
+  private int windowEndLine;
+  private int windowStart;
+  private int highlightStart;
+  private int highlightEnd;
+  private Object sourceHighlight;
+  private boolean selectingFromSource;
+  private boolean reloading;
   private final JEditorPane infoPane;
-  private final String source;
+  private final JTextArea statsPane;
+  private final JTextField searchField;
+  private final JLabel searchResult;
+  private JavacASTSearch search;
+  private JavacASTReferences references;
+  private final JButton declarationButton;
+  private final JButton usagesButton;
+  private int[] matches = new int[0];
+  private JavacASTDiff diff;
+  private int match;
+  private final JPanel statusBar;
+  private final JProgressBar progressBar;
+  private final JButton cancelButton;
+  private final CountDownLatch loaded = new CountDownLatch(1);
+  private final Loader loader;
+  private JavacASTWatcher watcher;
+  private long estimatedSize;
+  private List<JavacASTNode> lazyNodes = new ArrayList<>();
+  /** The parser the lazy nodes on display attribute through, or null. */
+  private JavacASTParser lazyParser;
+  private boolean closed;
+  private final String filename;
+  private final JavacASTParser.Mode mode;
+  private final List<String> options = new ArrayList<>();
+  private final JavacASTFilter filter;
+  private final boolean useCache;
+  private final int expandDepth;
+  private final boolean watch;
+  private final String diffFilename;
+  /** The snapshot and source of the diff base, read by the first load. */
+  private final Object diffBaseLock = new Object();
+  private JavacASTSnapshot diffBase;
+  private JavacASTSource diffBaseSource;
+
+  /** What loading the file produces off the event dispatch thread. */
+  private static final class Content {
+    final JavacASTSource source;
+    final JavacASTTokens tokens;
+    final JavacASTSnapshot snapshot;
+    final JavacASTIntervalIndex index;
+    final JavacASTSearch search;
+    final JavacASTReferences references;
+    final JavacASTDiff diff;
+    final List<JavacASTNode> lazyNodes;
+    final JavacASTParser lazyParser;
+    final JavacASTStats stats;
+
+    Content(JavacASTSource source, JavacASTSnapshot snapshot, JavacASTDiff diff,
+        List<JavacASTNode> lazyNodes, JavacASTParser lazyParser, JavacASTStats stats) {
+      this.source = source;
+      this.tokens = JavacASTTokens.of(source);
+      this.snapshot = snapshot;
+      this.index = JavacASTIntervalIndex.of(snapshot);
+      this.search = JavacASTSearch.of(JavacASTIndex.of(snapshot));
+      this.references = JavacASTReferences.of(snapshot);
+      this.diff = diff;
+      this.lazyNodes = lazyNodes;
+      this.lazyParser = lazyParser;
+      this.stats = stats;
+    }
+  }
+
+  /** Lists the tokens of a file, formatting only the rows that are painted. */
+  private static final class TokenListModel extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+    private final JavacASTTokens tokens;
+    private final JavacASTSource source;
 
-  private JavacASTViewer(String[] args) throws IOException {
+    TokenListModel(JavacASTTokens tokens, JavacASTSource source) {
+      this.tokens = tokens;
+      this.source = source;
+    }
+
+    @Override
+    public int getSize() {
+      return tokens.size();
+    }
+
+    @Override
+    public String getElementAt(int token) {
+      int start = tokens.getStart(token);
+      int line = source.getLine(start);
+      String text = source.subSequence(start, Math.min(tokens.getEnd(token),
+          start + MAX_TOKEN_TEXT));
+      int newline = text.indexOf('\n');
+      if (newline >= 0) {
+        text = text.substring(0, newline).trim() + "...";
+      }
+      return String.format("%d:%d %s %s", line + 1, start - source.getLineStart(line) + 1,
+          tokens.getKind(token), text);
+    }
+  }
+
+  /**
+   * Paints the text of the source pane in the colors of its tokens. The text area only paints
+   * the lines in view, so only they are colored.
+   */
+  private class TokenView extends PlainView {
+    private final Segment segment = new Segment();
+
+    TokenView(Element element) {
+      super(element);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation") // The float overloads are not available on Java 8.
+    protected int drawUnselectedText(Graphics g, int x, int y, int p0, int p1)
+        throws BadLocationException {
+      if (tokens == null) {
+        return super.drawUnselectedText(g, x, y, p0, p1);
+      }
+      Color text = getContainer().getForeground();
+      int token = tokens.indexAt(windowStart + p0);
+      for (int p = p0; p < p1; ) {
+        int next = p1;
+        Color color = text;
+        if (token < tokens.size()) {
+          int start = tokens.getStart(token) - windowStart;
+          if (start > p) {
+            next = Math.min(start, p1);
+          } else {
+            next = Math.min(tokens.getEnd(token) - windowStart, p1);
+            color = Optional.ofNullable(getTokenColor(tokens.getKind(token))).orElse(text);
+            token++;
+          }
+        }
+        getDocument().getText(p, next - p, segment);
+        g.setColor(color);
+        x = Utilities.drawTabbedText(segment, x, y, g, this, p);
+        p = next;
+      }
+      return x;
+    }
+  }
+
+  /** Returns the color of a kind of token, or null for the text color. */
+  private static Color getTokenColor(JavacASTTokens.Kind kind) {
+    switch (kind) {
+      case KEYWORD:
+      case LITERAL:
+        return KEYWORD_COLOR;
+      case NUMBER:
+        return NUMBER_COLOR;
+      case STRING:
+        return STRING_COLOR;
+      case COMMENT:
+        return COMMENT_COLOR;
+      case ERROR:
+        return ERROR_COLOR;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Loads the file on a worker thread, showing each phase as it starts. Cancelling stops the load
+   * when its next phase starts and discards it.
+   */
+  private class Loader extends SwingWorker<Content, JavacASTStats.Phase> {
+    /** The content loaded, until the load is shown or discarded. Guarded by this. */
+    private Content content;
+    private boolean discarded;
+
+    @Override
+    protected Content doInBackground() throws IOException {
+      Content loaded = load(phase -> {
+        if (isCancelled()) {
+          throw new CancellationException();
+        }
+        publish(phase);
+      });
+      synchronized (this) {
+        if (discarded) {
+          closeParser(loaded.lazyParser);
+        } else {
+          content = loaded;
+        }
+      }
+      return loaded;
+    }
+
+    /** Closes the parser of the content if it has not been shown, now or once it is loaded. */
+    synchronized void discard() {
+      discarded = true;
+      if (content != null) {
+        closeParser(content.lazyParser);
+        content = null;
+      }
+    }
+
+    @Override
+    protected void process(List<JavacASTStats.Phase> phases) {
+      for (JavacASTStats.Phase phase : phases) {
+        // READ is nested in PARSE, so the bar only moves forward.
+        if (phase.ordinal() >= progressBar.getValue()) {
+          progressBar.setValue(phase.ordinal());
+          progressBar.setString(filename + ": " + phase.toString().toLowerCase());
+        }
+      }
+    }
+
+    @Override
+    protected void done() {
+      try {
+        if (isCancelled() || closed) {
+          progressBar.setString(filename + ": cancelled");
+          discard();
+        } else {
+          show(get());
+          statusBar.setVisible(false);
+          revalidate();
+          repaint();
+        }
+      } catch (ExecutionException e) {
+        progressBar.setString(filename + ": " + e.getCause());
+        System.err.println("Loading " + filename + ": " + e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        cancelButton.setEnabled(false);
+        loaded.countDown();
+      }
+    }
+  }
+
+  /**
+   * Creates the viewer and starts loading the file in the background; the panes stay empty until
+   * the tree is ready.
+   */
+  JavacASTViewer(String[] args) {
     super(new GridBagLayout());
-    String filename = args[0];
-    source = new String(Files.readAllBytes(Paths.get(filename)), StandardCharsets.UTF_8);
+    JavacASTParser.Mode mode = JavacASTParser.Mode.ANALYZE;
+    int expandDepth = DEFAULT_EXPAND_DEPTH;
+    boolean useCache = true;
+    boolean watch = false;
+    String diffFilename = null;
+    JavacASTFilter.Builder filter = new JavacASTFilter.Builder();
+    for (int i = 0; i < args.length - 1; i++) {
+      if (args[i].equals("--expand-depth") && i < args.length - 2) {
+        expandDepth = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--no-cache")) {
+        useCache = false;
+      } else if (JavacASTParser.PATH_OPTIONS.contains(args[i]) && i < args.length - 2) {
+        options.add(args[i]);
+        options.add(args[++i]);
+      } else if (JavacASTFilter.OPTIONS.contains(args[i])) {
+        i = filter.parse(args, i);
+      } else if (args[i].equals("--watch")) {
+        watch = true;
+      } else if (args[i].equals("--diff") && i < args.length - 2) {
+        diffFilename = args[++i];
+      } else {
+        mode = parseMode(args[i]);
+      }
+    }
+    this.filename = args[args.length - 1];
+    if (!Files.isRegularFile(Paths.get(filename))) {
+      throw new IllegalArgumentException("No such file: " + filename);
+    }
+    this.mode = mode;
+    this.filter = filter.build();
+    // With a source or class path the tree also depends on other files, which the key ignores.
+    this.useCache = useCache && options.isEmpty();
+    this.expandDepth = expandDepth;
+    this.watch = watch;
+    this.diffFilename = diffFilename;
 
-    tree = new JTree(getSwingTree(getJavacAST(filename)));
+    tree = new JTree((TreeModel) null) {
+      @Override
+      public String convertValueToText(Object value, boolean selected, boolean expanded,
+          boolean leaf, int row, boolean hasFocus) {
+        return value instanceof Integer ? JavacASTViewer.this.treeModel.getText(value) : "";
+      }
+    };
     tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
-    expandAllNodes(tree);
+    tree.setRowHeight(tree.getFontMetrics(tree.getFont()).getHeight() + 2);
+    tree.setLargeModel(true);
+    tree.setCellRenderer(new DefaultTreeCellRenderer() {
+      @Override
+      public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected,
+          boolean expanded, boolean leaf, int row, boolean hasFocus) {
+        super.getTreeCellRendererComponent(tree, value, selected, expanded, leaf, row, hasFocus);
+        int node = diff == null || selected ? JavacASTSnapshot.NONE : treeModel.getNode(value);
+        if (node != JavacASTSnapshot.NONE) {
+          setForeground(diff.isInserted(node) ? INSERTED : diff.isUpdated(node) ? UPDATED
+              : diff.isMoved(node) ? MOVED : getTextNonSelectionColor());
+        }
+        return this;
+      }
+    });
     tree.addTreeSelectionListener(this::valueChanged);
     addComponent(tree, 0);
 
-    sourcePane = new JEditorPane();
+    sourcePane = new JTextArea();
+    sourcePane.setUI(new BasicTextAreaUI() {
+      @Override
+      public View create(Element element) {
+        return new TokenView(element);
+      }
+    });
     sourcePane.setEditable(false);
-    updateSourcePane(0, source.length());
-    addComponent(sourcePane, 1);
+    sourcePane.setFont(new Font(Font.MONOSPACED, Font.PLAIN, sourcePane.getFont().getSize()));
+    sourcePane.addCaretListener(this::caretUpdate);
+    sourceScrollPane = addComponent(sourcePane, 1);
+    sourceScrollPane.getVerticalScrollBar().addAdjustmentListener(this::sourceScrolled);
+    lineNumbers = new JTextArea();
+    lineNumbers.setEditable(false);
+    lineNumbers.setFocusable(false);
+    lineNumbers.setFont(sourcePane.getFont());
+    lineNumbers.setBackground(new Color(0xEEEEEE));
+    sourceScrollPane.setRowHeaderView(lineNumbers);
 
     infoPane = new JEditorPane();
     infoPane.setEditable(false);
     addComponent(infoPane, 2);
+
+    statsPane = new JTextArea();
+    statsPane.setEditable(false);
+    statsPane.setFont(sourcePane.getFont());
+    tokenList = new JList<>();
+    tokenList.setFont(sourcePane.getFont());
+    // A fixed cell size keeps the list from measuring every token.
+    tokenList.setPrototypeCellValue(String.format("%9s %-10s %" + MAX_TOKEN_TEXT + "s",
+        "", "", ""));
+    tokenList.addListSelectionListener(this::tokenSelected);
+    JTabbedPane tabs = new JTabbedPane();
+    tabs.addTab("Statistics", new JScrollPane(statsPane));
+    tabs.addTab("Tokens", new JScrollPane(tokenList));
+    addColumn(tabs, 3);
+
+    searchField = new JTextField(30);
+    searchField.setEnabled(false);
+    searchField.getDocument().addDocumentListener(new DocumentListener() {
+      @Override
+      public void insertUpdate(DocumentEvent event) {
+        search(true);
+      }
+
+      @Override
+      public void removeUpdate(DocumentEvent event) {
+        search(true);
+      }
+
+      @Override
+      public void changedUpdate(DocumentEvent event) {}
+    });
+    // Enter goes to the next match, shift-Enter to the previous one.
+    searchField.addActionListener(event ->
+        selectMatch(match + ((event.getModifiers() & ActionEvent.SHIFT_MASK) != 0 ? -1 : 1)));
+    searchResult = new JLabel();
+    declarationButton = new JButton("Go to declaration");
+    declarationButton.setMnemonic('D');
+    declarationButton.setEnabled(false);
+    declarationButton.addActionListener(event -> goToDeclaration());
+    usagesButton = new JButton("Find usages");
+    usagesButton.setMnemonic('U');
+    usagesButton.setEnabled(false);
+    usagesButton.addActionListener(event -> findUsages());
+    JPanel searchBar = new JPanel(new FlowLayout(FlowLayout.LEADING));
+    searchBar.add(declarationButton);
+    searchBar.add(usagesButton);
+    searchBar.add(new JLabel("Search kinds, names and types:"));
+    searchBar.add(searchField);
+    searchBar.add(searchResult);
+    GridBagConstraints searchConstraints = new GridBagConstraints();
+    searchConstraints.gridy = 2;
+    searchConstraints.gridwidth = GridBagConstraints.REMAINDER;
+    searchConstraints.fill = GridBagConstraints.HORIZONTAL;
+    add(searchBar, searchConstraints);
+
+    progressBar = new JProgressBar(0, JavacASTStats.Phase.MODEL.ordinal());
+    progressBar.setStringPainted(true);
+    progressBar.setString(filename);
+    cancelButton = new JButton("Cancel");
+    statusBar = new JPanel(new BorderLayout());
+    statusBar.add(progressBar, BorderLayout.CENTER);
+    statusBar.add(cancelButton, BorderLayout.EAST);
+    GridBagConstraints constraints = new GridBagConstraints();
+    constraints.gridy = 1;
+    constraints.gridwidth = GridBagConstraints.REMAINDER;
+    constraints.fill = GridBagConstraints.HORIZONTAL;
+    add(statusBar, constraints);
+
+    loader = new Loader();
+    cancelButton.addActionListener(event -> loader.cancel(true));
+    loader.execute();
   }
 
-  private void addComponent(JComponent component, int column) {
-    Dimension d = new Dimension(400, 600);
+  /** Waits until the first load has been shown, has failed or has been cancelled. */
+  void awaitLoaded() throws InterruptedException {
+    loaded.await();
+  }
+
+  /** Returns roughly how much heap the loaded file retains, or 0 before it is shown. */
+  long getEstimatedSize() {
+    return estimatedSize;
+  }
+
+  private void setEstimatedSize(Content content) {
+    long nodes = content.snapshot.size()
+        + (content.diff == null ? 0 : content.diff.getOldSnapshot().size());
+    long old = estimatedSize;
+    estimatedSize = nodes * (mode == JavacASTParser.Mode.LAZY ? BYTES_PER_LAZY_NODE
+        : BYTES_PER_NODE) + content.tokens.size() * BYTES_PER_TOKEN;
+    firePropertyChange(ESTIMATED_SIZE, old, estimatedSize);
+  }
+
+  /** Cancels the load if it is under way, stops watching the file and closes its parser. */
+  void close() {
+    closed = true;
+    loader.cancel(true);
+    loader.discard();
+    closeParser(lazyParser);
+    lazyParser = null;
+    if (watcher != null) {
+      try {
+        watcher.close();
+      } catch (IOException e) {
+        System.err.println("Closing " + filename + ": " + e);
+      }
+    }
+  }
+
+  /** Reads and visits the file on the calling thread. */
+  private Content load(Consumer<JavacASTStats.Phase> listener) throws IOException {
+    List<JavacASTNode> nodes = new ArrayList<>();
+    JavacASTStats stats = new JavacASTStats(Paths.get(filename), listener);
+    // Lazy nodes attribute through the parser's file manager, so it stays open with the content.
+    JavacASTParser lazyParser = mode == JavacASTParser.Mode.LAZY
+        ? new JavacASTParser(mode, options, filter, null) : null;
+    try {
+      JavacASTSnapshot snapshot = getJavacAST(filename, mode, options, filter, useCache,
+          lazyParser, nodes, stats);
+      JavacASTSource source = JavacASTSource.read(Paths.get(filename));
+      stats.count(snapshot);
+      JavacASTDiff diff = null;
+      if (diffFilename != null) {
+        diff = diff(snapshot, source);
+      }
+      return new Content(source, snapshot, diff, nodes, lazyParser, stats);
+    } catch (IOException | RuntimeException e) {
+      closeParser(lazyParser);
+      throw e;
+    }
+  }
+
+  /**
+   * Diffs the file against the diff base. The base is parsed by the first load only, since
+   * reloads only change the file shown, and analyzed only if the file shown is, so that types
+   * are compared only when both sides have them.
+   */
+  private JavacASTDiff diff(JavacASTSnapshot snapshot, JavacASTSource source)
+      throws IOException {
+    synchronized (diffBaseLock) {
+      if (diffBase == null) {
+        Path diffFile = Paths.get(diffFilename);
+        JavacASTParser.Mode diffMode = mode == JavacASTParser.Mode.ANALYZE
+            ? JavacASTParser.Mode.ANALYZE : JavacASTParser.Mode.PARSE_ONLY;
+        try (JavacASTParser parser = new JavacASTParser(diffMode, options, filter, null)) {
+          diffBase = parser.snapshot(diffFile);
+        }
+        diffBaseSource = JavacASTSource.read(diffFile);
+      }
+      return JavacASTDiff.of(diffBase, diffBaseSource, snapshot, source);
+    }
+  }
+
+  private void closeParser(JavacASTParser parser) {
+    if (parser != null) {
+      try {
+        parser.close();
+      } catch (IOException e) {
+        System.err.println("Closing the parser of " + filename + ": " + e);
+      }
+    }
+  }
+
+  /** Shows the first load of the file, then starts watching it if asked to. */
+  @SuppressWarnings("try")
+  private void show(Content content) {
+    lazyNodes = content.lazyNodes;
+    lazyParser = content.lazyParser;
+    intervalIndex = content.index;
+    search = content.search;
+    references = content.references;
+    diff = content.diff;
+    try (JavacASTStats.Timer timer = content.stats.start(JavacASTStats.Phase.MODEL)) {
+      treeModel = new JavacASTTreeModel(content.snapshot);
+      tree.setModel(treeModel);
+      expandNodes(0, 0, expandDepth);
+    }
+    source = content.source;
+    tokens = content.tokens;
+    tokenList.setModel(new TokenListModel(tokens, source));
+    showWindow(0, Math.min(source.getLineCount(), MAX_WINDOW_LINES));
+    statsPane.setText(getStatsText(content));
+    searchField.setEnabled(true);
+    declarationButton.setEnabled(true);
+    usagesButton.setEnabled(true);
+    setEstimatedSize(content);
+    if (watch) {
+      try {
+        watcher = new JavacASTWatcher(Paths.get(filename), this::reload);
+      } catch (IOException e) {
+        System.err.println("Watching " + filename + ": " + e);
+      }
+    }
+  }
+
+  /**
+   * Re-parses the file on the calling thread, diffs the result against the tree on display and
+   * applies only the differences on the event dispatch thread.
+   */
+  @SuppressWarnings("try")
+  private void reload() {
+    try {
+      Content content = load(null);
+      JavacASTTreeModel.Update update;
+      try (JavacASTStats.Timer timer = content.stats.start(JavacASTStats.Phase.MODEL)) {
+        update = treeModel.diff(content.snapshot);
+      }
+      SwingUtilities.invokeAndWait(() -> {
+        if (closed) {
+          closeParser(content.lazyParser);
+          return;
+        }
+        reloading = true;
+        try {
+          closeParser(lazyParser);
+          lazyParser = content.lazyParser;
+          lazyNodes = content.lazyNodes;
+          intervalIndex = content.index;
+          search = content.search;
+          references = content.references;
+          diff = content.diff;
+          source = content.source;
+          tokens = content.tokens;
+          tokenList.setModel(new TokenListModel(tokens, source));
+          int lines = source.getLineCount();
+          showWindow(Math.min(windowFirstLine, lines), Math.min(windowEndLine, lines));
+          treeModel.apply(update);
+          search(false);
+          statsPane.setText(getStatsText(content));
+          setEstimatedSize(content);
+          showNode(tree.getLastSelectedPathComponent(), true);
+          if (statusBar.isVisible()) {
+            statusBar.setVisible(false);
+            revalidate();
+          }
+        } finally {
+          reloading = false;
+        }
+      });
+    } catch (IOException | RuntimeException | StackOverflowError e) {
+      reloadFailed(e);
+    } catch (InvocationTargetException e) {
+      reloadFailed(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Reports a failed reload in the status bar, which stays until a reload succeeds. */
+  private void reloadFailed(Throwable error) {
+    System.err.println("Reloading " + filename + ": " + error);
+    SwingUtilities.invokeLater(() -> {
+      if (closed) {
+        return;
+      }
+      progressBar.setValue(0);
+      progressBar.setString(filename + ": reload failed: " + error);
+      statusBar.setVisible(true);
+      revalidate();
+    });
+  }
+
+  /** Returns the statistics of a load, followed by the differences if there is a diff. */
+  private String getStatsText(Content content) {
+    StringBuilder sb = new StringBuilder(content.stats.toString());
+    if (content.diff == null) {
+      return sb.toString();
+    }
+    sb.append(String.format("%nChanges since %s:%n%s%n", diffFilename, content.diff));
+    JavacASTSnapshot old = content.diff.getOldSnapshot();
+    List<Integer> deleted = content.diff.getDeletedRoots();
+    for (int node : deleted.subList(0, Math.min(deleted.size(), MAX_LISTED_DELETIONS))) {
+      sb.append(String.format("deleted %s at %d%n", old.toString(node),
+          old.getStartPosition(node)));
+    }
+    if (deleted.size() > MAX_LISTED_DELETIONS) {
+      sb.append(String.format("and %d more deletions%n",
+          deleted.size() - MAX_LISTED_DELETIONS));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Finds the nodes that match the search box. With {@code expand} only the paths to the first
+   * {@value #MAX_EXPANDED_MATCHES} matches are expanded and the first match is selected; an empty
+   * search box restores the initial expansion.
+   */
+  private void search(boolean expand) {
+    String text = searchField.getText().trim();
+    long start = System.nanoTime();
+    matches = search.find(text).stream().toArray();
+    double millis = (System.nanoTime() - start) / 1e6;
+    match = 0;
+    searchResult.setText(text.isEmpty()
+        ? "" : String.format("%d matches in %.1f ms", matches.length, millis));
+    if (!expand) {
+      return;
+    }
+    // Setting the model again drops every expanded path.
+    tree.setModel(null);
+    tree.setModel(treeModel);
+    if (text.isEmpty()) {
+      expandNodes(0, 0, expandDepth);
+      return;
+    }
+    expandMatches();
+  }
+
+  /**
+   * Expands the paths to the first {@value #MAX_EXPANDED_MATCHES} matches and selects the first
+   * one; the tree model must have been set again first.
+   */
+  private void expandMatches() {
+    JavacASTSnapshot snapshot = getSnapshot();
+    for (int i = 0; i < Math.min(matches.length, MAX_EXPANDED_MATCHES); i++) {
+      int parent = snapshot.getParent(matches[i]);
+      if (parent != JavacASTSnapshot.NONE) {
+        tree.expandPath(treeModel.getTreePath(parent));
+      }
+    }
+    selectMatch(0);
+  }
+
+  /**
+   * Returns the symbol of the selected node, or {@link JavacASTSnapshot#NONE} after saying why
+   * there is none.
+   */
+  private int getSelectedSymbol() {
+    Object selected = tree.getLastSelectedPathComponent();
+    int symbol = selected == null ? JavacASTSnapshot.NONE
+        : references.getSymbol(0, treeModel.getNode(selected));
+    if (symbol == JavacASTSnapshot.NONE) {
+      searchResult.setText(mode == JavacASTParser.Mode.ANALYZE
+          ? "No declaration or reference selected" : "Symbols need the file to be analyzed");
+    }
+    return symbol;
+  }
+
+  /** Returns the element of the selected node as text. */
+  private String getSelectedElement() {
+    return getSnapshot().getElement(treeModel.getNode(tree.getLastSelectedPathComponent()));
+  }
+
+  /** Selects the node that declares the symbol of the selected node, if this file does. */
+  private void goToDeclaration() {
+    int symbol = getSelectedSymbol();
+    if (symbol == JavacASTSnapshot.NONE) {
+      return;
+    }
+    int declaration = references.getDeclarationNode(symbol);
+    if (declaration == JavacASTSnapshot.NONE) {
+      searchResult.setText(getSelectedElement() + " is declared in another file");
+      return;
+    }
+    searchResult.setText("");
+    TreePath path = treeModel.getTreePath(declaration);
+    tree.setSelectionPath(path);
+    tree.scrollPathToVisible(path);
+  }
+
+  /**
+   * Makes the references to the symbol of the selected node the matches, which Enter in the
+   * search box then steps through.
+   */
+  private void findUsages() {
+    int symbol = getSelectedSymbol();
+    if (symbol == JavacASTSnapshot.NONE) {
+      return;
+    }
+    long start = System.nanoTime();
+    matches = references.getReferences(symbol, 0);
+    double micros = (System.nanoTime() - start) / 1e3;
+    match = 0;
+    searchResult.setText(String.format("%d usages of %s in %.1f us", matches.length,
+        getSelectedElement(), micros));
+    if (matches.length > 0) {
+      tree.setModel(null);
+      tree.setModel(treeModel);
+      expandMatches();
+    }
+  }
+
+  /** Selects a match, wrapping around at either end. */
+  private void selectMatch(int i) {
+    if (matches.length == 0) {
+      return;
+    }
+    match = Math.floorMod(i, matches.length);
+    TreePath path = treeModel.getTreePath(matches[match]);
+    tree.setSelectionPath(path);
+    tree.scrollPathToVisible(path);
+  }
+
+  private JScrollPane addComponent(JComponent component, int column) {
     JScrollPane scrollPane = new JScrollPane(component);
-    scrollPane.setPreferredSize(d);
-    scrollPane.setMinimumSize(d);
+    addColumn(scrollPane, column);
+    return scrollPane;
+  }
+
+  private void addColumn(JComponent component, int column) {
+    Dimension d = new Dimension(400, 600);
+    component.setPreferredSize(d);
+    component.setMinimumSize(d);
 
     GridBagConstraints constraints = new GridBagConstraints();
     constraints.gridx = column;
@@ -83,81 +855,315 @@ public class JavacASTViewer extends JPanel {
     constraints.weightx = 0.3;
     constraints.weighty = 1;
     constraints.fill = GridBagConstraints.BOTH;
-    add(scrollPane, constraints);
+    add(component, constraints);
   }
 
-  private static JavacASTNode getJavacAST(String filename) throws IOException {
-    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-    StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-    Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromStrings(
-        Arrays.asList(filename));
-    JavacTask task = (JavacTask) compiler.getTask(null, fileManager, null, null, null, units);
-    Iterable<? extends CompilationUnitTree> asts = task.parse();
-    task.analyze();
-    JavacASTNode root = JavacASTVisitor.visit(asts.iterator().next(), Trees.instance(task));
-    fileManager.close();
-    return root;
+  static JavacASTParser.Mode parseMode(String flag) {
+    switch (flag) {
+      case "--lazy":
+        return JavacASTParser.Mode.LAZY;
+      case "--parse-only":
+        return JavacASTParser.Mode.PARSE_ONLY;
+      default:
+        throw new IllegalArgumentException("Unknown option: " + flag);
+    }
+  }
+
+  /**
+   * Returns the snapshot shown by the viewer. In lazy mode the file is parsed by {@code
+   * lazyParser} and {@code lazyNodes} receives the node of every snapshot id, which attributes the
+   * file the first time the info pane asks for it, and the cache is not used.
+   */
+  private static JavacASTSnapshot getJavacAST(String filename, JavacASTParser.Mode mode,
+      List<String> options, JavacASTFilter filter, boolean useCache, JavacASTParser lazyParser,
+      List<JavacASTNode> lazyNodes, JavacASTStats stats) throws IOException {
+    if (mode != JavacASTParser.Mode.LAZY) {
+      Path file = Paths.get(filename);
+      JavacASTCache.Loader loader = () -> {
+        try (JavacASTParser parser = new JavacASTParser(mode, options, filter, null)) {
+          return parser.snapshot(file, stats);
+        }
+      };
+      return useCache
+          ? new JavacASTCache(JavacASTCache.defaultDirectory()).get(file, mode, filter, loader)
+          : loader.load();
+    }
+    return JavacASTSnapshot.of(lazyParser.parse(Paths.get(filename), stats), lazyNodes);
   }
 
-  private static DefaultMutableTreeNode getSwingTree(JavacASTNode javacASTNode) {
-    DefaultMutableTreeNode swingNode = new DefaultMutableTreeNode(javacASTNode);
-    javacASTNode.getChildren().map(JavacASTViewer::getSwingTree).forEach(swingNode::add);
-    return swingNode;
+  private JavacASTSnapshot getSnapshot() {
+    return treeModel.getSnapshot();
   }
 
-  private void expandAllNodes(JTree tree) {
-    int row = 0;
-    while (row < tree.getRowCount()) {
-      tree.expandRow(row++);
+  private void expandNodes(int node, int depth, int maxDepth) {
+    JavacASTSnapshot snapshot = getSnapshot();
+    if (depth >= maxDepth || snapshot.getFirstChild(node) == JavacASTSnapshot.NONE) {
+      return;
+    }
+    tree.expandPath(treeModel.getTreePath(node));
+    for (int c = snapshot.getFirstChild(node); c != JavacASTSnapshot.NONE;
+        c = snapshot.getNextSibling(c)) {
+      expandNodes(c, depth + 1, maxDepth);
     }
   }
 
   private void valueChanged(TreeSelectionEvent event) {
-    DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-    if (node == null) {
+    showNode(tree.getLastSelectedPathComponent(), !selectingFromSource);
+  }
+
+  private void showNode(Object value, boolean scroll) {
+    int node = value == null ? JavacASTSnapshot.NONE : treeModel.getNode(value);
+    if (node == JavacASTSnapshot.NONE) {
+      return;
+    }
+    JavacASTSnapshot snapshot = getSnapshot();
+    updateSourcePane(snapshot.getStartPosition(node), snapshot.getEndPosition(node), scroll);
+    updateInfoPane(node);
+    if (!syncingTokens) {
+      selectTokens(snapshot.getStartPosition(node), snapshot.getEndPosition(node));
+    }
+  }
+
+  /** Selects the tokens in {@code [start, end)} in the token list and scrolls to the first. */
+  private void selectTokens(int start, int end) {
+    int first = tokens.indexFrom(start);
+    int last = tokens.indexFrom(end) - 1;
+    syncingTokens = true;
+    try {
+      if (last < first) {
+        tokenList.clearSelection();
+      } else {
+        tokenList.setSelectionInterval(first, last);
+        tokenList.ensureIndexIsVisible(first);
+      }
+    } finally {
+      syncingTokens = false;
+    }
+  }
+
+  /** Selects the innermost node at the token selected in the token list. */
+  private void tokenSelected(ListSelectionEvent event) {
+    int token = tokenList.getLeadSelectionIndex();
+    if (syncingTokens || event.getValueIsAdjusting() || token < 0 || token >= tokens.size()) {
+      return;
+    }
+    int node = intervalIndex.nodeAt(tokens.getStart(token));
+    if (node == JavacASTSnapshot.NONE) {
       return;
     }
-    JavacASTNode javacASTNode = (JavacASTNode) node.getUserObject();
-    updateSourcePane(javacASTNode.getStartPosition(), javacASTNode.getEndPosition());
-    updateInfoPane(javacASTNode);
+    TreePath path = treeModel.getTreePath(node);
+    syncingTokens = true;
+    try {
+      tree.setSelectionPath(path);
+    } finally {
+      syncingTokens = false;
+    }
+    tree.scrollPathToVisible(path);
+  }
+
+  private void caretUpdate(CaretEvent event) {
+    if (reloading || intervalIndex == null) {
+      return;
+    }
+    int node = intervalIndex.nodeAt(windowStart + event.getDot());
+    if (node == JavacASTSnapshot.NONE) {
+      return;
+    }
+    TreePath path = treeModel.getTreePath(node);
+    selectingFromSource = true;
+    try {
+      tree.setSelectionPath(path);
+    } finally {
+      selectingFromSource = false;
+    }
+    tree.scrollPathToVisible(path);
   }
 
-  private void updateSourcePane(long startPosition, long endPosition) {
-    int start = (int) startPosition;
-    int end = (int) endPosition;
+  /**
+   * Highlights a range of the source, first moving the window of lines on display to it if
+   * {@code scroll} is set and it is not shown.
+   */
+  void updateSourcePane(long startPosition, long endPosition, boolean scroll) {
+    highlightStart = (int) startPosition;
+    highlightEnd = (int) endPosition;
     if (startPosition == Diagnostic.NOPOS || endPosition == Diagnostic.NOPOS) {
-      start = end = 0;
+      highlightStart = highlightEnd = 0;
     }
-    sourcePane.setContentType("text/html");
-    StringBuilder sb = new StringBuilder();
-    sb.append("<pre>");
-    sb.append(source.substring(0, start));
-    sb.append("<span style=\"color: blue; font-weight:bold\">");
-    sb.append(source.substring(start, end));
-    sb.append("</span>");
-    sb.append(source.substring(end));
-    sb.append("<pre>");
-    sourcePane.setText(sb.toString());
+    if (!scroll) {
+      highlight();
+      return;
+    }
+    int first = source.getLine(highlightStart);
+    int last = source.getLine(Math.max(highlightEnd - 1, highlightStart));
+    if (first < windowFirstLine || Math.min(last, first + WINDOW_MARGIN) >= windowEndLine) {
+      int from = Math.max(0, first - WINDOW_MARGIN);
+      showWindow(from, Math.min(Math.min(last + 1 + WINDOW_MARGIN, from + MAX_WINDOW_LINES),
+          source.getLineCount()));
+      // The caret scrolls the new window to its top later on the event queue.
+      SwingUtilities.invokeLater(this::scrollToHighlight);
+    } else {
+      highlight();
+      scrollToHighlight();
+    }
+  }
+
+  @SuppressWarnings("deprecation") // modelToView2D is not available on Java 8.
+  private void scrollToHighlight() {
+    try {
+      Rectangle startView = sourcePane.modelToView(toWindow(highlightStart));
+      Rectangle endView = sourcePane.modelToView(toWindow(highlightEnd));
+      if (startView != null && endView != null) {
+        sourcePane.scrollRectToVisible(startView.union(endView));
+      }
+    } catch (BadLocationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Shows the lines in {@code [firstLine, endLine)} in the source pane. */
+  private void showWindow(int firstLine, int endLine) {
+    windowFirstLine = firstLine;
+    windowEndLine = endLine;
+    windowStart = source.getLineStart(firstLine);
+    StringBuilder numbers = new StringBuilder();
+    for (int line = firstLine; line < endLine; line++) {
+      numbers.append(line + 1).append('\n');
+    }
+    reloading = true;
+    try {
+      sourcePane.setText(source.subSequence(windowStart, source.getLineStart(endLine)));
+      lineNumbers.setText(numbers.toString());
+      sourceScrollPane.validate();
+      sourcePane.setCaretPosition(0);
+    } finally {
+      reloading = false;
+    }
+    highlight();
+  }
+
+  /** Converts a source position to one in the window, clamped to the window. */
+  private int toWindow(int position) {
+    return Math.max(0, Math.min(position - windowStart, sourcePane.getDocument().getLength()));
+  }
+
+  private void highlight() {
+    try {
+      Highlighter highlighter = sourcePane.getHighlighter();
+      if (sourceHighlight == null) {
+        sourceHighlight =
+            highlighter.addHighlight(toWindow(highlightStart), toWindow(highlightEnd),
+                SOURCE_HIGHLIGHT);
+      } else {
+        highlighter.changeHighlight(sourceHighlight, toWindow(highlightStart),
+            toWindow(highlightEnd));
+      }
+    } catch (BadLocationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void sourceScrolled(AdjustmentEvent event) {
+    if (source != null && !reloading && !event.getValueIsAdjusting()) {
+      SwingUtilities.invokeLater(this::shiftWindow);
+    }
+  }
+
+  /**
+   * Moves the window by {@link #WINDOW_MARGIN} lines when the source pane is scrolled to either
+   * end of it, keeping the same line at the top of the view.
+   */
+  @SuppressWarnings("deprecation") // viewToModel2D is not available on Java 8.
+  private void shiftWindow() {
+    JScrollBar bar = sourceScrollPane.getVerticalScrollBar();
+    int shift;
+    if (bar.getValue() == bar.getMinimum() && windowFirstLine > 0) {
+      shift = -Math.min(WINDOW_MARGIN, windowFirstLine);
+    } else if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum()
+        && windowEndLine < source.getLineCount()) {
+      shift = Math.min(WINDOW_MARGIN, source.getLineCount() - windowEndLine);
+    } else {
+      return;
+    }
+    JViewport viewport = sourceScrollPane.getViewport();
+    int topLine;
+    try {
+      topLine = sourcePane.getLineOfOffset(sourcePane.viewToModel(viewport.getViewPosition()));
+    } catch (BadLocationException e) {
+      throw new IllegalStateException(e);
+    }
+    showWindow(windowFirstLine + shift, windowEndLine + shift);
+    SwingUtilities.invokeLater(() -> {
+      try {
+        int line = Math.max(0, Math.min(topLine - shift, sourcePane.getLineCount() - 1));
+        Rectangle top = sourcePane.modelToView(sourcePane.getLineStartOffset(line));
+        viewport.setViewPosition(new Point(0, top.y));
+      } catch (BadLocationException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+
+  /**
+   * Shows the type and element of the node. In lazy mode a node that has not been attributed yet
+   * is attributed on a worker thread, since the first one attributes the whole file.
+   */
+  private void updateInfoPane(int node) {
+    if (lazyNodes.isEmpty()) {
+      JavacASTSnapshot snapshot = getSnapshot();
+      infoPane.setText(getInfo(snapshot.getType(node), snapshot.getElement(node)));
+      return;
+    }
+    JavacASTNode javacASTNode = lazyNodes.get(node);
+    if (javacASTNode.isAttributed()) {
+      infoPane.setText(getInfo(javacASTNode.getTypeMirror().orElse(null),
+          javacASTNode.getElement().orElse(null)));
+      return;
+    }
+    infoPane.setText("Attributing...");
+    List<JavacASTNode> nodes = lazyNodes;
+    new SwingWorker<String, Void>() {
+      @Override
+      protected String doInBackground() {
+        return getInfo(javacASTNode.getTypeMirror().orElse(null),
+            javacASTNode.getElement().orElse(null));
+      }
+
+      @Override
+      protected void done() {
+        Object selected = tree.getLastSelectedPathComponent();
+        if (lazyNodes != nodes || selected == null || treeModel.getNode(selected) != node) {
+          return;
+        }
+        try {
+          infoPane.setText(get());
+        } catch (ExecutionException e) {
+          infoPane.setText(e.getCause().toString());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }.execute();
   }
 
-  private void updateInfoPane(JavacASTNode javacASTNode) {
+  private static String getInfo(Object typeMirror, Object element) {
     StringBuilder sb = new StringBuilder();
     sb.append("TypeMirror\n");
-    javacASTNode.getTypeMirror().ifPresent(sb::append);
+    Optional.ofNullable(typeMirror).ifPresent(sb::append);
     sb.append("\nElement\n");
-    javacASTNode.getElement().ifPresent(sb::append);
-    infoPane.setText(sb.toString());
+    Optional.ofNullable(element).ifPresent(sb::append);
+    return sb.toString();
   }
 
   public static void main(String[] args) {
-    javax.swing.SwingUtilities.invokeLater(() -> {
+    SwingUtilities.invokeLater(() -> {
           try {
             JFrame frame = new JFrame("Javac AST Viewer");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            frame.add(new JavacASTViewer(args));
+            frame.add(JavacASTWorkspace.isWorkspace(args)
+                ? new JavacASTWorkspace(args) : new JavacASTViewer(args));
             frame.pack();
             frame.setVisible(true);
-          } catch (IOException e) {
+          } catch (IllegalArgumentException | UncheckedIOException e) {
             System.err.println(e);
             System.exit(1);
           }
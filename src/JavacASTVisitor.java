@@ -71,307 +71,406 @@ import com.sun.source.tree.VariableTree;
 import com.sun.source.tree.WhileLoopTree;
 import com.sun.source.tree.WildcardTree;
 import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePath;
 import com.sun.source.util.TreePathScanner;
 import com.sun.source.util.Trees;
+import java.util.ArrayList;
+import java.util.List;
 import javax.lang.model.element.Element;
 import javax.lang.model.type.TypeMirror;
 
-public class JavacASTVisitor extends TreePathScanner<Void, JavacASTNode> {
+public class JavacASTVisitor<N> extends TreePathScanner<Void, N> {
 
   private final CompilationUnitTree compilationUnitTree;
-  private JavacASTNode root;
+  private N root;
   private final Trees trees;
   private final SourcePositions sourcePositions;
+  private final boolean attribute;
+  private final JavacASTFilter filter;
+  private final JavacASTBuilder<N> builder;
+  private final boolean topLevelClasses;
+  private final List<N> open = new ArrayList<>();
+  private int depth;
 
   static JavacASTNode visit(CompilationUnitTree tree, Trees trees) {
-    JavacASTVisitor visitor = new JavacASTVisitor(tree, trees);
+    return visit(tree, trees, true, JavacASTVisitor::newNode);
+  }
+
+  static JavacASTNode visit(CompilationUnitTree tree, JavacASTAttributor attributor,
+      JavacASTParser.Mode mode, JavacASTFilter filter) {
+    if (mode != JavacASTParser.Mode.LAZY) {
+      return visit(tree, attributor.getTrees(), mode == JavacASTParser.Mode.ANALYZE, filter,
+          JavacASTVisitor::newNode);
+    }
+    return visit(tree, attributor.getTrees(), false, filter,
+        (parent, path, element, typeMirror, startPosition, endPosition) -> addChild(parent,
+            new JavacASTNode(path, attributor, startPosition, endPosition)));
+  }
+
+  static <N> N visit(CompilationUnitTree tree, Trees trees, boolean attribute,
+      JavacASTBuilder<N> builder) {
+    return visit(tree, trees, attribute, JavacASTFilter.ALL, builder);
+  }
+
+  static <N> N visit(CompilationUnitTree tree, Trees trees, boolean attribute,
+      JavacASTFilter filter, JavacASTBuilder<N> builder) {
+    JavacASTVisitor<N> visitor =
+        new JavacASTVisitor<>(tree, trees, attribute, filter, builder, true);
     visitor.scan(tree, null);
     return visitor.root;
   }
 
-  private JavacASTVisitor(CompilationUnitTree compilationUnitTree, Trees trees) {
+  /**
+   * Visits the compilation unit but not its top-level classes, which {@link #visitClass} then adds
+   * under the returned root one at a time. The root is left open: the caller ends it once its
+   * last class is added.
+   */
+  static <N> N visitWithoutClasses(CompilationUnitTree tree, Trees trees, boolean attribute,
+      JavacASTFilter filter, JavacASTBuilder<N> builder) {
+    JavacASTVisitor<N> visitor =
+        new JavacASTVisitor<>(tree, trees, attribute, filter, builder, false);
+    visitor.scan(tree, null);
+    return visitor.root;
+  }
+
+  /** Visits the top-level class at {@code path} into {@code builder} as a child of the root. */
+  static <N> void visitClass(TreePath path, N root, Trees trees, boolean attribute,
+      JavacASTFilter filter, JavacASTBuilder<N> builder) {
+    if (!filter.accepts(path.getLeaf(), path.getParentPath().getLeaf(), 1)) {
+      return;
+    }
+    JavacASTVisitor<N> visitor =
+        new JavacASTVisitor<>(path.getCompilationUnit(), trees, attribute, filter, builder, true);
+    // As if scan(Tree, N) had been called on the class from the root.
+    visitor.depth = 2;
+    visitor.scan(path, root);
+    if (!visitor.open.isEmpty()) {
+      builder.end(visitor.open.remove(0));
+    }
+  }
+
+  private static JavacASTNode newNode(JavacASTNode parent, TreePath path, Element element,
+      TypeMirror typeMirror, long startPosition, long endPosition) {
+    return addChild(parent,
+        new JavacASTNode(path.getLeaf(), element, typeMirror, startPosition, endPosition));
+  }
+
+  private static JavacASTNode addChild(JavacASTNode parent, JavacASTNode node) {
+    if (parent != null) {
+      parent.addChild(node);
+    }
+    return node;
+  }
+
+  private JavacASTVisitor(CompilationUnitTree compilationUnitTree, Trees trees, boolean attribute,
+      JavacASTFilter filter, JavacASTBuilder<N> builder, boolean topLevelClasses) {
     this.compilationUnitTree = compilationUnitTree;
     this.trees = trees;
+    this.attribute = attribute;
+    this.filter = filter;
+    this.builder = builder;
+    this.topLevelClasses = topLevelClasses;
     sourcePositions = trees.getSourcePositions();
   }
 
-  private JavacASTNode process(Tree tree, JavacASTNode parent) {
-    Element element = trees.getElement(getCurrentPath());
-    TypeMirror typeMirror = trees.getTypeMirror(getCurrentPath());
+  /**
+   * Prunes the subtrees the filter rejects before any of their nodes is processed, and ends the
+   * node added for {@code tree}, if any, once its subtree is done.
+   */
+  @Override
+  public Void scan(Tree tree, N parent) {
+    TreePath path = getCurrentPath();
+    if (tree == null || !filter.accepts(tree, path == null ? null : path.getLeaf(), depth)
+        || !topLevelClasses && tree instanceof ClassTree && path.getParentPath() == null) {
+      return null;
+    }
+    int opened = open.size();
+    depth++;
+    try {
+      super.scan(tree, parent);
+    } finally {
+      depth--;
+    }
+    if (open.size() > opened && (topLevelClasses || path != null)) {
+      builder.end(open.remove(opened));
+    }
+    return null;
+  }
+
+  private N process(Tree tree, N parent) {
+    TreePath path = getCurrentPath();
+    Element element = attribute ? trees.getElement(path) : null;
+    TypeMirror typeMirror = attribute ? trees.getTypeMirror(path) : null;
     long startPosition = sourcePositions.getStartPosition(compilationUnitTree, tree);
     long endPosition = sourcePositions.getEndPosition(compilationUnitTree, tree);
-    JavacASTNode node = new JavacASTNode(tree, element, typeMirror, startPosition, endPosition);
-    parent.addChild(node);
+    N node = builder.add(parent, path, element, typeMirror, startPosition, endPosition);
+    open.add(node);
     return node;
   }
 
   @Override
-  public Void visitCompilationUnit(CompilationUnitTree tree, JavacASTNode unused) {
-    Element element = trees.getElement(getCurrentPath());
-    TypeMirror typeMirror = trees.getTypeMirror(getCurrentPath());
-    long startPosition = sourcePositions.getStartPosition(compilationUnitTree, tree);
-    long endPosition = sourcePositions.getEndPosition(compilationUnitTree, tree);
-    root = new JavacASTNode(tree, element, typeMirror, startPosition, endPosition);
+  public Void visitCompilationUnit(CompilationUnitTree tree, N unused) {
+    root = process(tree, null);
     return super.visitCompilationUnit(tree, root);
   }
 
   @Override
-  public Void visitImport(ImportTree tree, JavacASTNode parent) {
+  public Void visitImport(ImportTree tree, N parent) {
     return super.visitImport(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitClass(ClassTree tree, JavacASTNode parent) {
+  public Void visitClass(ClassTree tree, N parent) {
     return super.visitClass(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitMethod(MethodTree tree, JavacASTNode parent) {
+  public Void visitMethod(MethodTree tree, N parent) {
     return super.visitMethod(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitVariable(VariableTree tree, JavacASTNode parent) {
+  public Void visitVariable(VariableTree tree, N parent) {
     return super.visitVariable(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitEmptyStatement(EmptyStatementTree tree, JavacASTNode parent) {
+  public Void visitEmptyStatement(EmptyStatementTree tree, N parent) {
     return super.visitEmptyStatement(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitBlock(BlockTree tree, JavacASTNode parent) {
+  public Void visitBlock(BlockTree tree, N parent) {
     return super.visitBlock(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitDoWhileLoop(DoWhileLoopTree tree, JavacASTNode parent) {
+  public Void visitDoWhileLoop(DoWhileLoopTree tree, N parent) {
     return super.visitDoWhileLoop(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitWhileLoop(WhileLoopTree tree, JavacASTNode parent) {
+  public Void visitWhileLoop(WhileLoopTree tree, N parent) {
     return super.visitWhileLoop(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitForLoop(ForLoopTree tree, JavacASTNode parent) {
+  public Void visitForLoop(ForLoopTree tree, N parent) {
     return super.visitForLoop(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitEnhancedForLoop(EnhancedForLoopTree tree, JavacASTNode parent) {
+  public Void visitEnhancedForLoop(EnhancedForLoopTree tree, N parent) {
     return super.visitEnhancedForLoop(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitLabeledStatement(LabeledStatementTree tree, JavacASTNode parent) {
+  public Void visitLabeledStatement(LabeledStatementTree tree, N parent) {
     return super.visitLabeledStatement(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitSwitch(SwitchTree tree, JavacASTNode parent) {
+  public Void visitSwitch(SwitchTree tree, N parent) {
     return super.visitSwitch(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitCase(CaseTree tree, JavacASTNode parent) {
+  public Void visitCase(CaseTree tree, N parent) {
     return super.visitCase(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitSynchronized(SynchronizedTree tree, JavacASTNode parent) {
+  public Void visitSynchronized(SynchronizedTree tree, N parent) {
     return super.visitSynchronized(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitTry(TryTree tree, JavacASTNode parent) {
+  public Void visitTry(TryTree tree, N parent) {
     return super.visitTry(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitCatch(CatchTree tree, JavacASTNode parent) {
+  public Void visitCatch(CatchTree tree, N parent) {
     return super.visitCatch(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitConditionalExpression(ConditionalExpressionTree tree, JavacASTNode parent) {
+  public Void visitConditionalExpression(ConditionalExpressionTree tree, N parent) {
     return super.visitConditionalExpression(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitIf(IfTree tree, JavacASTNode parent) {
+  public Void visitIf(IfTree tree, N parent) {
     return super.visitIf(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitExpressionStatement(ExpressionStatementTree tree, JavacASTNode parent) {
+  public Void visitExpressionStatement(ExpressionStatementTree tree, N parent) {
     return super.visitExpressionStatement(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitBreak(BreakTree tree, JavacASTNode parent) {
+  public Void visitBreak(BreakTree tree, N parent) {
     return super.visitBreak(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitContinue(ContinueTree tree, JavacASTNode parent) {
+  public Void visitContinue(ContinueTree tree, N parent) {
     return super.visitContinue(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitReturn(ReturnTree tree, JavacASTNode parent) {
+  public Void visitReturn(ReturnTree tree, N parent) {
     return super.visitReturn(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitThrow(ThrowTree tree, JavacASTNode parent) {
+  public Void visitThrow(ThrowTree tree, N parent) {
     return super.visitThrow(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitAssert(AssertTree tree, JavacASTNode parent) {
+  public Void visitAssert(AssertTree tree, N parent) {
     return super.visitAssert(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitMethodInvocation(MethodInvocationTree tree, JavacASTNode parent) {
+  public Void visitMethodInvocation(MethodInvocationTree tree, N parent) {
     return super.visitMethodInvocation(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitNewClass(NewClassTree tree, JavacASTNode parent) {
+  public Void visitNewClass(NewClassTree tree, N parent) {
     return super.visitNewClass(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitNewArray(NewArrayTree tree, JavacASTNode parent) {
+  public Void visitNewArray(NewArrayTree tree, N parent) {
     return super.visitNewArray(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitLambdaExpression(LambdaExpressionTree tree, JavacASTNode parent) {
+  public Void visitLambdaExpression(LambdaExpressionTree tree, N parent) {
     return super.visitLambdaExpression(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitParenthesized(ParenthesizedTree tree, JavacASTNode parent) {
+  public Void visitParenthesized(ParenthesizedTree tree, N parent) {
     return super.visitParenthesized(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitAssignment(AssignmentTree tree, JavacASTNode parent) {
+  public Void visitAssignment(AssignmentTree tree, N parent) {
     return super.visitAssignment(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitCompoundAssignment(CompoundAssignmentTree tree, JavacASTNode parent) {
+  public Void visitCompoundAssignment(CompoundAssignmentTree tree, N parent) {
     return super.visitCompoundAssignment(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitUnary(UnaryTree tree, JavacASTNode parent) {
+  public Void visitUnary(UnaryTree tree, N parent) {
     return super.visitUnary(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitBinary(BinaryTree tree, JavacASTNode parent) {
+  public Void visitBinary(BinaryTree tree, N parent) {
     return super.visitBinary(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitTypeCast(TypeCastTree tree, JavacASTNode parent) {
+  public Void visitTypeCast(TypeCastTree tree, N parent) {
     return super.visitTypeCast(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitInstanceOf(InstanceOfTree tree, JavacASTNode parent) {
+  public Void visitInstanceOf(InstanceOfTree tree, N parent) {
     return super.visitInstanceOf(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitArrayAccess(ArrayAccessTree tree, JavacASTNode parent) {
+  public Void visitArrayAccess(ArrayAccessTree tree, N parent) {
     return super.visitArrayAccess(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitMemberSelect(MemberSelectTree tree, JavacASTNode parent) {
+  public Void visitMemberSelect(MemberSelectTree tree, N parent) {
     return super.visitMemberSelect(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitMemberReference(MemberReferenceTree tree, JavacASTNode parent) {
+  public Void visitMemberReference(MemberReferenceTree tree, N parent) {
     return super.visitMemberReference(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitIdentifier(IdentifierTree tree, JavacASTNode parent) {
+  public Void visitIdentifier(IdentifierTree tree, N parent) {
     return super.visitIdentifier(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitLiteral(LiteralTree tree, JavacASTNode parent) {
+  public Void visitLiteral(LiteralTree tree, N parent) {
     return super.visitLiteral(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitPrimitiveType(PrimitiveTypeTree tree, JavacASTNode parent) {
+  public Void visitPrimitiveType(PrimitiveTypeTree tree, N parent) {
     return super.visitPrimitiveType(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitArrayType(ArrayTypeTree tree, JavacASTNode parent) {
+  public Void visitArrayType(ArrayTypeTree tree, N parent) {
     return super.visitArrayType(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitParameterizedType(ParameterizedTypeTree tree, JavacASTNode parent) {
+  public Void visitParameterizedType(ParameterizedTypeTree tree, N parent) {
     return super.visitParameterizedType(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitUnionType(UnionTypeTree tree, JavacASTNode parent) {
+  public Void visitUnionType(UnionTypeTree tree, N parent) {
     return super.visitUnionType(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitIntersectionType(IntersectionTypeTree tree, JavacASTNode parent) {
+  public Void visitIntersectionType(IntersectionTypeTree tree, N parent) {
     return super.visitIntersectionType(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitTypeParameter(TypeParameterTree tree, JavacASTNode parent) {
+  public Void visitTypeParameter(TypeParameterTree tree, N parent) {
     return super.visitTypeParameter(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitWildcard(WildcardTree tree, JavacASTNode parent) {
+  public Void visitWildcard(WildcardTree tree, N parent) {
     return super.visitWildcard(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitModifiers(ModifiersTree tree, JavacASTNode parent) {
+  public Void visitModifiers(ModifiersTree tree, N parent) {
     return super.visitModifiers(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitAnnotation(AnnotationTree tree, JavacASTNode parent) {
+  public Void visitAnnotation(AnnotationTree tree, N parent) {
     return super.visitAnnotation(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitAnnotatedType(AnnotatedTypeTree tree, JavacASTNode parent) {
+  public Void visitAnnotatedType(AnnotatedTypeTree tree, N parent) {
     return super.visitAnnotatedType(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitOther(Tree tree, JavacASTNode parent) {
+  public Void visitOther(Tree tree, N parent) {
     return super.visitOther(tree, process(tree, parent));
   }
 
   @Override
-  public Void visitErroneous(ErroneousTree tree, JavacASTNode parent) {
+  public Void visitErroneous(ErroneousTree tree, N parent) {
     return super.visitErroneous(tree, process(tree, parent));
   }
 }
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Calls a listener on its own thread whenever a file is written. Writes that arrive within
+ * {@link #QUIET_MILLIS} of each other are reported once, so a generator rewriting the file
+ * several times per second does not queue one reload per write; a file that never goes quiet is
+ * still reported every {@link #MAX_WAIT_MILLIS}. Calls run one at a time, and while one runs at
+ * most one more waits, since it will see every write made before it starts.
+ */
+class JavacASTWatcher implements Closeable {
+
+  static final long QUIET_MILLIS = 100;
+  static final long MAX_WAIT_MILLIS = 1000;
+
+  private final Path file;
+  private final Runnable listener;
+  private final WatchService watchService;
+  private final ExecutorService calls;
+  private final AtomicBoolean queued = new AtomicBoolean();
+
+  JavacASTWatcher(Path file, Runnable listener) throws IOException {
+    this.file = file.toAbsolutePath();
+    this.listener = listener;
+    this.watchService = this.file.getFileSystem().newWatchService();
+    this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+    this.calls = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "JavacASTWatcher listener " + file.getFileName());
+      thread.setDaemon(true);
+      return thread;
+    });
+    Thread thread = new Thread(this::run, "JavacASTWatcher " + file.getFileName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        if (!isChanged(watchService.take())) {
+          continue;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+        while (true) {
+          long wait = Math.min(TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS),
+              deadline - System.nanoTime());
+          WatchKey key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : null;
+          if (key == null) {
+            break;
+          }
+          isChanged(key);
+        }
+        if (queued.compareAndSet(false, true)) {
+          calls.execute(() -> {
+            queued.set(false);
+            listener.run();
+          });
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException | RejectedExecutionException e) {
+      // Closed.
+    }
+  }
+
+  private boolean isChanged(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || file.getFileName().equals(event.context())) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    calls.shutdown();
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.DefaultListModel;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+
+/**
+ * Lists the Java files under several files and directories and shows the one selected in a
+ * {@link JavacASTViewer}. Viewers are kept after another file is selected, so going back to a
+ * file shows it at once with its expansion and selection, until their estimated size exceeds the
+ * budget; then the least recently shown are dropped first. Once the file on display is loaded,
+ * the next {@value #PREFETCH} files in the list are loaded in the background.
+ */
+public class JavacASTWorkspace extends JPanel {
+
+  private static final long serialVersionUID = 1L;
+  private static final int PREFETCH = 2;
+  /** The options that take a value, so that a value is not mistaken for a file to list. */
+  private static final Set<String> VALUE_OPTIONS = new HashSet<>(Arrays.asList("--expand-depth",
+      "--diff", "--include", "--exclude", "--max-depth", "--memory"));
+
+  static {
+    VALUE_OPTIONS.addAll(JavacASTParser.PATH_OPTIONS);
+  }
+
+  private final List<String> options;
+  private final List<Path> files;
+  private final long maxSize;
+  /** The viewers by file, least recently shown first. */
+  private final Map<Path, JavacASTViewer> viewers = new LinkedHashMap<>(16, 0.75f, true);
+  /** The prefetched viewers that have not been shown yet, which are dropped before the others. */
+  private final Set<JavacASTViewer> prefetched = new HashSet<>();
+  private final JList<String> list;
+  private JComponent shown;
+  private JavacASTViewer current;
+
+  /**
+   * Creates a workspace over the Java files under the paths at the end of {@code args}; the
+   * arguments before them are options for each viewer, and {@code --memory <megabytes>} sets the
+   * budget, a quarter of the maximum heap by default.
+   */
+  JavacASTWorkspace(String[] args) {
+    super(new BorderLayout());
+    int first = getFirstPath(args);
+    options = new ArrayList<>();
+    long maxSize = Runtime.getRuntime().maxMemory() / 4;
+    for (int i = 0; i < first; i++) {
+      if (args[i].equals("--memory") && i < first - 1) {
+        maxSize = Long.parseLong(args[++i]) << 20;
+      } else {
+        options.add(args[i]);
+      }
+    }
+    this.maxSize = maxSize;
+    try {
+      List<Path> files = JavacASTBatch.collectSources(
+          Arrays.asList(args).subList(first, args.length));
+      Collections.sort(files);
+      this.files = files;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (files.isEmpty()) {
+      throw new IllegalArgumentException("No Java files in " + Arrays.asList(args)
+          .subList(first, args.length));
+    }
+    Path common = JavacASTBatch.commonDirectory(files);
+    DefaultListModel<String> names = new DefaultListModel<>();
+    for (Path file : files) {
+      names.addElement(common.relativize(file.toAbsolutePath()).toString());
+    }
+    list = new JList<>(names);
+    list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    list.addListSelectionListener(event -> {
+      if (!event.getValueIsAdjusting() && list.getSelectedIndex() >= 0) {
+        open(list.getSelectedIndex());
+      }
+    });
+    JScrollPane listPane = new JScrollPane(list);
+    listPane.setPreferredSize(new Dimension(250, 600));
+    add(listPane, BorderLayout.WEST);
+    shown = new JLabel("Select a file", JLabel.CENTER);
+    add(shown, BorderLayout.CENTER);
+    list.setSelectedIndex(0);
+  }
+
+  /**
+   * Returns whether {@code args} name a directory or several files, rather than the one file a
+   * {@link JavacASTViewer} shows.
+   */
+  static boolean isWorkspace(String[] args) {
+    int first = getFirstPath(args);
+    return first < args.length - 1 || first == args.length - 1
+        && Files.isDirectory(Paths.get(args[first]));
+  }
+
+  /** Returns the index of the first of the existing paths at the end of {@code args}. */
+  private static int getFirstPath(String[] args) {
+    int first = args.length;
+    while (first > 0 && !args[first - 1].startsWith("-")
+        && Files.exists(Paths.get(args[first - 1]))) {
+      first--;
+    }
+    if (first > 0 && first < args.length && VALUE_OPTIONS.contains(args[first - 1])) {
+      first++;
+    }
+    return first;
+  }
+
+  /** Shows the file at {@code index} in the list. */
+  private void open(int index) {
+    current = getViewer(files.get(index));
+    prefetched.remove(current);
+    remove(shown);
+    shown = current;
+    add(shown, BorderLayout.CENTER);
+    revalidate();
+    repaint();
+    if (current.getEstimatedSize() > 0) {
+      prefetch(index);
+    }
+    trim();
+  }
+
+  /** Returns the viewer of {@code file}, creating it if it is not kept. */
+  private JavacASTViewer getViewer(Path file) {
+    JavacASTViewer viewer = viewers.get(file);
+    if (viewer == null) {
+      List<String> args = new ArrayList<>(options);
+      args.add(file.toString());
+      viewer = new JavacASTViewer(args.toArray(new String[0]));
+      viewer.addPropertyChangeListener(JavacASTViewer.ESTIMATED_SIZE,
+          event -> loaded((JavacASTViewer) event.getSource()));
+      viewers.put(file, viewer);
+    }
+    return viewer;
+  }
+
+  private void loaded(JavacASTViewer viewer) {
+    if (viewer == current) {
+      prefetch(list.getSelectedIndex());
+    }
+    trim();
+  }
+
+  /** Starts loading the files after {@code index} that are not kept yet. */
+  private void prefetch(int index) {
+    for (int i = index + 1; i < Math.min(index + 1 + PREFETCH, files.size()); i++) {
+      if (!viewers.containsKey(files.get(i))) {
+        prefetched.add(getViewer(files.get(i)));
+      }
+    }
+  }
+
+  /**
+   * Drops the prefetched viewers not shown yet, then the least recently shown viewers, until the
+   * others fit in the budget. Viewers still loading have no size yet and are kept.
+   */
+  private void trim() {
+    long size = 0;
+    for (JavacASTViewer viewer : viewers.values()) {
+      size += viewer.getEstimatedSize();
+    }
+    size = trim(size, true);
+    trim(size, false);
+  }
+
+  /** Drops viewers, only prefetched ones if {@code prefetchedOnly}, and returns the size left. */
+  private long trim(long size, boolean prefetchedOnly) {
+    for (Iterator<JavacASTViewer> i = viewers.values().iterator();
+        i.hasNext() && size > maxSize; ) {
+      JavacASTViewer viewer = i.next();
+      if (viewer != current && viewer.getEstimatedSize() > 0
+          && (!prefetchedOnly || prefetched.contains(viewer))) {
+        size -= viewer.getEstimatedSize();
+        viewer.close();
+        prefetched.remove(viewer);
+        i.remove();
+      }
+    }
+    return size;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.source.tree.Tree;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavacASTDiffTest {
+
+  @ClassRule
+  public static final TemporaryFolder folder = new TemporaryFolder();
+
+  private static JavacASTParser parser;
+
+  @BeforeClass
+  public static void setUp() {
+    parser = new JavacASTParser(JavacASTParser.Mode.PARSE_ONLY, null);
+  }
+
+  @AfterClass
+  public static void tearDown() throws IOException {
+    parser.close();
+  }
+
+  private static JavacASTDiff diff(String oldSource, String newSource) throws IOException {
+    JavacASTDiff diff = JavacASTDiff.of(snapshot(oldSource), oldSource, snapshot(newSource),
+        newSource);
+    assertConsistent(diff);
+    return diff;
+  }
+
+  static JavacASTSnapshot snapshot(String source) throws IOException {
+    Path file = folder.newFolder().toPath().resolve("A.java");
+    Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+    return parser.snapshot(file);
+  }
+
+  /** Checks that every old node is either deleted or the partner of exactly one new node. */
+  private static void assertConsistent(JavacASTDiff diff) {
+    int[] partners = new int[diff.getOldSnapshot().size()];
+    for (int node = 0; node < diff.getNewSnapshot().size(); node++) {
+      int oldNode = diff.getOldNode(node);
+      assertEquals(oldNode == JavacASTSnapshot.NONE, diff.isInserted(node));
+      if (oldNode != JavacASTSnapshot.NONE) {
+        partners[oldNode]++;
+      }
+    }
+    for (int node = 0; node < partners.length; node++) {
+      assertTrue("old node " + node + " has " + partners[node] + " partners",
+          partners[node] <= 1);
+      assertEquals("old node " + node, partners[node] == 0, diff.isDeleted(node));
+    }
+  }
+
+  /** Returns the kinds of the new nodes the diff says are moved. */
+  private static List<Tree.Kind> moved(JavacASTDiff diff) {
+    List<Tree.Kind> kinds = new ArrayList<>();
+    for (int node = 0; node < diff.getNewSnapshot().size(); node++) {
+      if (diff.isMoved(node)) {
+        kinds.add(diff.getNewSnapshot().getKind(node));
+      }
+    }
+    return kinds;
+  }
+
+  private static List<Tree.Kind> kinds(JavacASTSnapshot snapshot, List<Integer> nodes) {
+    List<Tree.Kind> kinds = new ArrayList<>();
+    for (int node : nodes) {
+      kinds.add(snapshot.getKind(node));
+    }
+    return kinds;
+  }
+
+  @Test
+  public void identical() throws IOException {
+    String source = "class A { void f() { a(1); } }\n";
+    assertEquals("0 inserted, 0 deleted, 0 updated, 0 moved", diff(source, source).toString());
+  }
+
+  @Test
+  public void insert() throws IOException {
+    JavacASTDiff diff = diff("class A { void f() { a(1); } }\n",
+        "class A { void f() { a(1); b(2); } }\n");
+    assertEquals(Arrays.asList(Tree.Kind.EXPRESSION_STATEMENT),
+        kinds(diff.getNewSnapshot(), diff.getInsertedRoots()));
+    assertTrue(diff.getDeletedRoots().isEmpty());
+    assertTrue(moved(diff).isEmpty());
+  }
+
+  @Test
+  public void delete() throws IOException {
+    JavacASTDiff diff = diff("class A { void f() { a(1); b(2); } }\n",
+        "class A { void f() { a(1); } }\n");
+    assertEquals(Arrays.asList(Tree.Kind.EXPRESSION_STATEMENT),
+        kinds(diff.getOldSnapshot(), diff.getDeletedRoots()));
+    assertTrue(diff.getInsertedRoots().isEmpty());
+  }
+
+  @Test
+  public void update() throws IOException {
+    JavacASTDiff diff = diff("class A { void f() { int x = 1; } }\n",
+        "class A { void f() { int y = 1; } }\n");
+    List<Tree.Kind> updated = new ArrayList<>();
+    for (int node = 0; node < diff.getNewSnapshot().size(); node++) {
+      if (diff.isUpdated(node)) {
+        updated.add(diff.getNewSnapshot().getKind(node));
+      }
+    }
+    assertEquals(Arrays.asList(Tree.Kind.VARIABLE), updated);
+    assertEquals("0 inserted, 0 deleted, 1 updated, 0 moved", diff.toString());
+  }
+
+  @Test
+  public void move() throws IOException {
+    JavacASTDiff diff = diff("class A { void f() { a(1, 2); } void g() { } }\n",
+        "class A { void f() { } void g() { a(1, 2); } }\n");
+    assertEquals(Arrays.asList(Tree.Kind.EXPRESSION_STATEMENT), moved(diff));
+    assertTrue(diff.getInsertedRoots().isEmpty());
+    assertTrue(diff.getDeletedRoots().isEmpty());
+  }
+
+  @Test
+  public void identicalSiblingMoved() throws IOException {
+    JavacASTDiff diff = diff("class A { void f() { a(1, 2); a(1, 2); } void g() { } }\n",
+        "class A { void f() { a(1, 2); } void g() { a(1, 2); } }\n");
+    assertEquals(Arrays.asList(Tree.Kind.EXPRESSION_STATEMENT), moved(diff));
+    assertTrue(diff.getInsertedRoots().isEmpty());
+    assertTrue(diff.getDeletedRoots().isEmpty());
+  }
+
+  @Test
+  public void identicalSiblingsReordered() throws IOException {
+    JavacASTDiff diff = diff(
+        "class A { void f() { if (c) { a(1); } if (c) { a(1); } b(); } }\n",
+        "class A { void f() { b(); if (c) { a(1); } if (c) { a(1); } } }\n");
+    assertEquals("0 inserted, 0 deleted, 0 updated, 1 moved", diff.toString());
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavacASTIntervalIndexTest {
+
+  /** Nested, touching ({@code f(g)}, {@code a.b}) and synthetic ({@code A()}) ranges. */
+  private static final String SOURCE = "class A {\n  int x = f(g) + a.b;\n  void m() {}\n}\n";
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private JavacASTSnapshot snapshot(String source) throws IOException {
+    Path file = folder.getRoot().toPath().resolve("A.java");
+    Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+    try (JavacASTParser parser = new JavacASTParser(JavacASTParser.Mode.PARSE_ONLY, null)) {
+      return parser.snapshot(file);
+    }
+  }
+
+  private static boolean isIndexed(JavacASTSnapshot snapshot, int node) {
+    int start = snapshot.getStartPosition(node);
+    return start >= 0 && snapshot.getEndPosition(node) > start;
+  }
+
+  /** The covering node that starts last, and among those the one with the highest id. */
+  private static int expectedNodeAt(JavacASTSnapshot snapshot, int offset) {
+    int best = JavacASTSnapshot.NONE;
+    for (int node = 0; node < snapshot.size(); node++) {
+      if (isIndexed(snapshot, node) && snapshot.getStartPosition(node) <= offset
+          && offset < snapshot.getEndPosition(node)
+          && (best == JavacASTSnapshot.NONE
+              || snapshot.getStartPosition(node) >= snapshot.getStartPosition(best))) {
+        best = node;
+      }
+    }
+    return best;
+  }
+
+  @Test
+  public void nodeAt() throws IOException {
+    JavacASTSnapshot snapshot = snapshot(SOURCE);
+    JavacASTIntervalIndex index = JavacASTIntervalIndex.of(snapshot);
+    for (int offset = -1; offset <= SOURCE.length() + 1; offset++) {
+      assertEquals("offset " + offset, expectedNodeAt(snapshot, offset), index.nodeAt(offset));
+    }
+  }
+
+  @Test
+  public void nodeAtTouchingRanges() throws IOException {
+    JavacASTSnapshot snapshot = snapshot(SOURCE);
+    JavacASTIntervalIndex index = JavacASTIntervalIndex.of(snapshot);
+    // Ranges are half-open: the offset where f ends and ( starts belongs to the invocation.
+    int f = SOURCE.indexOf("f(");
+    assertEquals("f", snapshot.getName(index.nodeAt(f)));
+    assertEquals(f + 1, snapshot.getEndPosition(index.nodeAt(f)));
+    assertEquals(f, snapshot.getStartPosition(index.nodeAt(f + 1)));
+    assertEquals("g", snapshot.getName(index.nodeAt(f + 2)));
+    // Past the end of the class nothing is covered.
+    assertEquals(JavacASTSnapshot.NONE, index.nodeAt(SOURCE.length() - 1));
+  }
+
+  @Test
+  public void nodesOverlapping() throws IOException {
+    JavacASTSnapshot snapshot = snapshot(SOURCE);
+    JavacASTIntervalIndex index = JavacASTIntervalIndex.of(snapshot);
+    for (int start = 0; start <= SOURCE.length(); start++) {
+      for (int end = start + 1; end <= SOURCE.length(); end++) {
+        int from = start;
+        int to = end;
+        int[] expected = IntStream.range(0, snapshot.size())
+            .filter(node -> isIndexed(snapshot, node) && snapshot.getStartPosition(node) < to
+                && snapshot.getEndPosition(node) > from)
+            .toArray();
+        assertArrayEquals(start + ", " + end, expected, index.nodesOverlapping(start, end));
+      }
+    }
+  }
+
+  @Test
+  public void nodesOverlappingEmptyRange() throws IOException {
+    JavacASTIntervalIndex index = JavacASTIntervalIndex.of(snapshot(SOURCE));
+    int f = SOURCE.indexOf("f(");
+    assertArrayEquals(new int[0], index.nodesOverlapping(f, f));
+    assertArrayEquals(new int[0], index.nodesOverlapping(f + 1, f));
+  }
+
+  @Test
+  public void emptySnapshot() throws IOException {
+    JavacASTIntervalIndex index = JavacASTIntervalIndex.of(snapshot(""));
+    assertEquals(JavacASTSnapshot.NONE, index.nodeAt(0));
+    assertArrayEquals(new int[0], index.nodesOverlapping(0, 1));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavacASTQueryTest {
+
+  private static final String SOURCE = "import java.util.List;\n"
+      + "class A {\n"
+      + "  List<? extends Number> numbers;\n"
+      + "  boolean equals(A other) {\n"
+      + "    List<String> strings = null;\n"
+      + "    return strings.isEmpty();\n"
+      + "  }\n"
+      + "  class B {\n"
+      + "    boolean equals(B other) {\n"
+      + "      return true;\n"
+      + "    }\n"
+      + "  }\n"
+      + "}\n";
+
+  @ClassRule
+  public static final TemporaryFolder folder = new TemporaryFolder();
+
+  private static JavacASTSnapshot snapshot;
+  private static JavacASTIndex index;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    Path file = folder.getRoot().toPath().resolve("A.java");
+    Files.write(file, SOURCE.getBytes(StandardCharsets.UTF_8));
+    try (JavacASTParser parser = new JavacASTParser(JavacASTParser.Mode.ANALYZE, null)) {
+      snapshot = parser.snapshot(file);
+    }
+    index = JavacASTIndex.of(snapshot);
+  }
+
+  /** Returns the names of the selected nodes, in pre-order. */
+  private static List<String> select(String selector) {
+    List<String> names = new ArrayList<>();
+    for (int node : JavacASTQuery.parse(selector).match(index)) {
+      names.add(snapshot.getName(node));
+    }
+    return names;
+  }
+
+  private static void assertMalformed(String selector) {
+    try {
+      JavacASTQuery.parse(selector);
+      fail(selector);
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void childAndDescendant() {
+    assertEquals("[equals, equals]", select("CLASS > METHOD[name=equals]").toString());
+    assertEquals("[]", select("COMPILATION_UNIT > METHOD[name=equals]").toString());
+    assertEquals("[equals, equals]", select("COMPILATION_UNIT METHOD[name=equals]").toString());
+    assertEquals("[other]", select("CLASS[name=B] > METHOD > VARIABLE").toString());
+    assertEquals("[other, strings]", select("CLASS[name=A] > METHOD VARIABLE").toString());
+  }
+
+  @Test
+  public void childWithoutSpaces() {
+    assertEquals(select("CLASS > METHOD[name=equals]"), select("CLASS>METHOD[name=equals]"));
+    assertEquals(select("CLASS > METHOD"), select("  CLASS >METHOD  "));
+  }
+
+  @Test
+  public void misplacedChild() {
+    assertMalformed("> METHOD");
+    assertMalformed("CLASS > > METHOD");
+    assertMalformed("CLASS >");
+    assertMalformed("");
+  }
+
+  @Test
+  public void exactAndSubstringValues() {
+    assertEquals("[equals, equals]", select("METHOD[name*=qual]").toString());
+    assertEquals("[]", select("METHOD[name=qual]").toString());
+    assertEquals("[strings]", select("VARIABLE[type*=String]").toString());
+    assertEquals("[strings]",
+        select("VARIABLE[type=java.util.List<java.lang.String>][name*=s]").toString());
+    assertEquals("[]", select("VARIABLE[type=List]").toString());
+  }
+
+  @Test
+  public void quotedValues() {
+    // The type has spaces, so it has to be quoted.
+    assertEquals("[numbers]",
+        select("VARIABLE[type=\"java.util.List<? extends java.lang.Number>\"]").toString());
+    assertEquals("[numbers]", select("VARIABLE[type*=\"? extends\"]").toString());
+    assertEquals(select("METHOD[name=equals]"), select("METHOD[name=\"equals\"]"));
+    // Brackets and escaped quotes are part of a quoted value.
+    assertEquals("[]", select("VARIABLE[name=\"a]b\"]").toString());
+    assertEquals("[]", select("VARIABLE[name=\"a\\\"b\"]").toString());
+    assertMalformed("VARIABLE[name=\"numbers]");
+  }
+
+  @Test
+  public void malformedFilters() {
+    assertMalformed("NOT_A_KIND");
+    assertMalformed("METHOD[size=1]");
+    assertMalformed("METHOD[name~=equals]");
+    assertMalformed("METHOD[name=equals");
+  }
+}
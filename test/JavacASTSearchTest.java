@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Locale;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavacASTSearchTest {
+
+  private static final String SOURCE = "import java.util.List;\n"
+      + "class Abc {\n"
+      + "  List<String> items;\n"
+      + "  int abcxbcd;\n"
+      + "  int xyzzy(int q, long qq) {\n"
+      + "    return q + (int) qq;\n"
+      + "  }\n"
+      + "}\n";
+
+  @ClassRule
+  public static final TemporaryFolder folder = new TemporaryFolder();
+
+  private static JavacASTSnapshot snapshot;
+  private static JavacASTSearch search;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    Path file = folder.getRoot().toPath().resolve("Abc.java");
+    Files.write(file, SOURCE.getBytes(StandardCharsets.UTF_8));
+    try (JavacASTParser parser = new JavacASTParser(JavacASTParser.Mode.ANALYZE, null)) {
+      snapshot = parser.snapshot(file);
+    }
+    search = JavacASTSearch.of(JavacASTIndex.of(snapshot));
+  }
+
+  /** The nodes whose kind, name or type contains the text, ignoring case. */
+  private static BitSet expected(String text) {
+    String query = text.toLowerCase(Locale.ROOT);
+    BitSet nodes = new BitSet();
+    for (int node = 0; node < snapshot.size(); node++) {
+      if (contains(snapshot.getKind(node).toString(), query)
+          || contains(snapshot.getName(node), query) || contains(snapshot.getType(node), query)) {
+        nodes.set(node);
+      }
+    }
+    return nodes;
+  }
+
+  private static boolean contains(String value, String query) {
+    return value != null && value.toLowerCase(Locale.ROOT).contains(query);
+  }
+
+  @Test
+  public void shortQueriesMatchAnywhere() {
+    for (String query : new String[] {"q", "Q", "qq", "zz", "yz", "t", "<", "g>", "z."}) {
+      assertEquals(query, expected(query), search.find(query));
+    }
+    // "yz" is in the middle of xyzzy, so a prefix lookup would miss it.
+    assertTrue(search.find("yz").get(nodeNamed("xyzzy")));
+  }
+
+  @Test
+  public void trigramQueries() {
+    for (String query : new String[] {"xyz", "XYZZY", "zzy", "abc", "list", "java.util",
+        "string>", "identifier", "method_inv", "items", "zzyx"}) {
+      assertEquals(query, expected(query), search.find(query));
+    }
+    // The only trigram of "yzx" is in no value.
+    assertTrue(search.find("yzx").isEmpty());
+  }
+
+  @Test
+  public void trigramsOutOfOrder() {
+    // Both trigrams of "abcd" occur in abcxbcd, but not next to each other.
+    assertTrue(expected("abcd").isEmpty());
+    assertTrue(search.find("abcd").isEmpty());
+    assertTrue(search.find("xbcd").get(nodeNamed("abcxbcd")));
+  }
+
+  @Test
+  public void emptyQuery() {
+    assertTrue(search.find("").isEmpty());
+    assertFalse(search.find("a").isEmpty());
+  }
+
+  private static int nodeNamed(String name) {
+    for (int node = 0; node < snapshot.size(); node++) {
+      if (name.equals(snapshot.getName(node))) {
+        return node;
+      }
+    }
+    throw new AssertionError(name);
+  }
+}
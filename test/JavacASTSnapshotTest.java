@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavacASTSnapshotTest {
+
+  @ClassRule
+  public static final TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] written;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    Path file = folder.getRoot().toPath().resolve("A.java");
+    Files.write(file, "class A { String s = \"x\"; }\n".getBytes(StandardCharsets.UTF_8));
+    try (JavacASTParser parser = new JavacASTParser(JavacASTParser.Mode.ANALYZE, null)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      parser.snapshot(file).write(Channels.newChannel(out));
+      written = out.toByteArray();
+    }
+  }
+
+  private static void assertUnreadable(byte[] bytes) {
+    try {
+      JavacASTSnapshot.read(ByteBuffer.wrap(bytes));
+      fail();
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void roundTrip() throws IOException {
+    JavacASTSnapshot snapshot = JavacASTSnapshot.read(ByteBuffer.wrap(written));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    snapshot.write(Channels.newChannel(out));
+    assertEquals(Arrays.toString(written), Arrays.toString(out.toByteArray()));
+  }
+
+  @Test
+  public void corruptCounts() {
+    for (int value : new int[] {-1, Integer.MAX_VALUE, written.length}) {
+      // The node count, then the string count.
+      for (int offset : new int[] {8, 12}) {
+        byte[] bytes = written.clone();
+        ByteBuffer.wrap(bytes).putInt(offset, value);
+        assertUnreadable(bytes);
+      }
+    }
+  }
+
+  @Test
+  public void truncated() {
+    for (int length = 0; length < written.length; length++) {
+      assertUnreadable(Arrays.copyOf(written, length));
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class JavacASTSourceTest {
+
+  /** Checks every range of the source against the string javac would decode. */
+  private static void assertDecodesAs(byte[] bytes) {
+    String expected = new String(bytes, StandardCharsets.UTF_8);
+    JavacASTSource source = JavacASTSource.of(ByteBuffer.wrap(bytes));
+    assertEquals(expected.length(), source.length());
+    for (int start = 0; start <= expected.length(); start++) {
+      for (int end = start; end <= expected.length(); end++) {
+        assertEquals(start + ", " + end, expected.substring(start, end),
+            source.subSequence(start, end));
+      }
+      if (start < expected.length()) {
+        assertEquals(expected.charAt(start), source.charAt(start));
+        int line = source.getLine(start);
+        assertEquals(expected.lastIndexOf('\n', start - 1) + 1, source.getLineStart(line));
+      }
+    }
+  }
+
+  @Test
+  public void ascii() {
+    assertDecodesAs("class A {\n  int x;\n}\n".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void supplementaryCodePointsStraddleRanges() {
+    // U+1D11E is a surrogate pair, so ranges can start or end between its halves.
+    assertDecodesAs("a\uD834\uDD1Eb\n\uD834\uDD1E\n\u00E9\uD834\uDD1E"
+        .getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void malformedBytes() {
+    assertDecodesAs(new byte[] {'x', (byte) 0xE2, (byte) 0x82, '\n', (byte) 0xFF, 'y',
+        (byte) 0xF0, (byte) 0x9D, 'z', (byte) 0x80, (byte) 0x80, '\n', (byte) 0xF0, (byte) 0x9D,
+        (byte) 0x84, (byte) 0x9E, (byte) 0xED, (byte) 0xA0, (byte) 0x80, (byte) 0xC3});
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavacASTTreeModelTest {
+
+  @ClassRule
+  public static final TemporaryFolder folder = new TemporaryFolder();
+
+  private static JavacASTParser parser;
+
+  @BeforeClass
+  public static void setUp() {
+    parser = new JavacASTParser(JavacASTParser.Mode.PARSE_ONLY, null);
+  }
+
+  @AfterClass
+  public static void tearDown() throws IOException {
+    parser.close();
+  }
+
+  private static JavacASTSnapshot snapshot(String source) throws IOException {
+    Path file = folder.newFolder().toPath().resolve("A.java");
+    Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+    return parser.snapshot(file);
+  }
+
+  /** Records the events as {@code type parent-path indices}. */
+  private static final class Recorder implements TreeModelListener {
+    final List<String> events = new ArrayList<>();
+
+    private void record(String type, TreeModelEvent event) {
+      events.add(type + " " + event.getTreePath().getPathCount() + " "
+          + Arrays.toString(event.getChildIndices()));
+    }
+
+    @Override
+    public void treeNodesChanged(TreeModelEvent event) {
+      record("changed", event);
+    }
+
+    @Override
+    public void treeNodesInserted(TreeModelEvent event) {
+      record("inserted", event);
+    }
+
+    @Override
+    public void treeNodesRemoved(TreeModelEvent event) {
+      record("removed", event);
+    }
+
+    @Override
+    public void treeStructureChanged(TreeModelEvent event) {
+      events.add("structure");
+    }
+  }
+
+  /** Replaces the snapshot of the model and returns the events fired. */
+  private static List<String> update(JavacASTTreeModel model, JavacASTSnapshot next) {
+    Recorder recorder = new Recorder();
+    model.addTreeModelListener(recorder);
+    model.apply(model.diff(next));
+    model.removeTreeModelListener(recorder);
+    assertConsistent(model);
+    return recorder.events;
+  }
+
+  /** Checks that walking the model by keys gives the tree of its snapshot. */
+  private static void assertConsistent(JavacASTTreeModel model) {
+    JavacASTSnapshot snapshot = model.getSnapshot();
+    if (snapshot.size() == 0) {
+      return;
+    }
+    List<Object> pending = new ArrayList<>(Collections.singletonList(model.getRoot()));
+    int visited = 0;
+    while (!pending.isEmpty()) {
+      Object value = pending.remove(pending.size() - 1);
+      int node = model.getNode(value);
+      assertEquals(visited++, node);
+      assertEquals(value, model.getTreePath(node).getLastPathComponent());
+      int[] children = snapshot.getChildren(node);
+      assertEquals(children.length, model.getChildCount(value));
+      for (int i = children.length - 1; i >= 0; i--) {
+        Object child = model.getChild(value, i);
+        assertEquals(children[i], model.getNode(child));
+        assertEquals(i, model.getIndexOfChild(value, child));
+        pending.add(child);
+      }
+    }
+    assertEquals(snapshot.size(), visited);
+  }
+
+  private static int find(JavacASTSnapshot snapshot, String name) {
+    for (int node = 0; node < snapshot.size(); node++) {
+      if (name.equals(snapshot.getName(node))) {
+        return node;
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  @Test
+  public void unchanged() throws IOException {
+    String source = "class A { void f() { a(1); } }\n";
+    JavacASTTreeModel model = new JavacASTTreeModel(snapshot(source));
+    Object key = model.getTreePath(find(model.getSnapshot(), "f")).getLastPathComponent();
+    assertEquals(Collections.emptyList(), update(model, snapshot(source)));
+    assertEquals(key, model.getTreePath(find(model.getSnapshot(), "f")).getLastPathComponent());
+  }
+
+  @Test
+  public void insertKeepsKeys() throws IOException {
+    JavacASTTreeModel model =
+        new JavacASTTreeModel(snapshot("class A { void f() { a(1); c(3); } void g() { } }\n"));
+    Object g = model.getTreePath(find(model.getSnapshot(), "g")).getLastPathComponent();
+    // Compilation unit, class, method, block: the statement is the block's second child.
+    assertEquals(Arrays.asList("inserted 4 [1]"),
+        update(model, snapshot("class A { void f() { a(1); int b; c(3); } void g() { } }\n")));
+    assertEquals(g, model.getTreePath(find(model.getSnapshot(), "g")).getLastPathComponent());
+  }
+
+  @Test
+  public void remove() throws IOException {
+    JavacASTTreeModel model =
+        new JavacASTTreeModel(snapshot("class A { void f() { a(1); int b; c(3); } }\n"));
+    assertEquals(Arrays.asList("removed 4 [1]"),
+        update(model, snapshot("class A { void f() { a(1); c(3); } }\n")));
+  }
+
+  @Test
+  public void alignsByKind() throws IOException {
+    JavacASTTreeModel model =
+        new JavacASTTreeModel(snapshot("class A { void f() { a(1); b(2); c(3); } }\n"));
+    // Statements of one kind are aligned in order, so b(2) takes the place of c(3) and is renamed.
+    assertEquals(Arrays.asList("removed 4 [2]", "changed 6 [0]"),
+        update(model, snapshot("class A { void f() { a(1); c(3); } }\n")));
+  }
+
+  @Test
+  public void rename() throws IOException {
+    JavacASTTreeModel model = new JavacASTTreeModel(snapshot("class A { int x; int y; }\n"));
+    // The modifiers of the class are its first child.
+    assertEquals(Arrays.asList("changed 2 [2]"),
+        update(model, snapshot("class A { int x; int z; }\n")));
+  }
+
+  @Test
+  public void emptyFile() throws IOException {
+    JavacASTTreeModel model = new JavacASTTreeModel(snapshot("class A { }\n"));
+    assertEquals(Arrays.asList("removed 1 [0]"), update(model, snapshot("")));
+    assertEquals(Arrays.asList("inserted 1 [0]"), update(model, snapshot("class B { }\n")));
+  }
+
+  /** Runs a task on a thread with the given stack size, rethrowing what it throws. */
+  private static <T> T onStack(long stackSize, Callable<T> task) throws Exception {
+    List<T> result = new ArrayList<>();
+    List<Throwable> thrown = new ArrayList<>();
+    Thread thread = new Thread(null, () -> {
+      try {
+        result.add(task.call());
+      } catch (Throwable t) {
+        thrown.add(t);
+      }
+    }, "test", stackSize);
+    thread.start();
+    thread.join();
+    if (!thrown.isEmpty()) {
+      throw new AssertionError(thrown.get(0));
+    }
+    return result.get(0);
+  }
+
+  @Test
+  public void deepNesting() throws Exception {
+    StringBuilder source = new StringBuilder("class A { void f() {");
+    for (int i = 0; i < 5000; i++) {
+      source.append(" if (x) {");
+    }
+    source.append(" a(1);");
+    for (int i = 0; i < 5000; i++) {
+      source.append(" }");
+    }
+    String old = source.append(" } }\n").toString();
+    // javac itself parses recursively, so it gets a large stack.
+    JavacASTTreeModel model = onStack(256 << 20, () -> new JavacASTTreeModel(snapshot(old)));
+    JavacASTSnapshot next = onStack(256 << 20, () -> snapshot(old.replace("a(1);", "int b;")));
+    // Matching, on the other hand, must not need more stack for deeper trees.
+    List<String> events = onStack(256 << 10, () -> update(model, next));
+    assertEquals(2, events.size());
+    assertTrue(events.get(0), events.get(0).startsWith("removed"));
+    assertTrue(events.get(1), events.get(1).startsWith("inserted"));
+  }
+}